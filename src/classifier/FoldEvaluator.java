@@ -0,0 +1,81 @@
+package classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import probesUtilities.FoldSource;
+
+/**
+ * Evaluates a classifier on every fold of a lazy FoldSource, either one fold after another or as independent tasks on
+ * an executor (e.g. a ForkJoinPool). Every fold gets its own classifier instance created with a seed derived from the
+ * fold index, so the per-fold accuracies do not depend on the number of threads or on scheduling.
+ */
+public class FoldEvaluator {
+
+    public interface ClassifierFactory {
+
+        IClassifier createClassifier( long seed );
+
+    }
+
+    private final ClassifierFactory classifierFactory;
+    private final long seed;
+
+    public FoldEvaluator( ClassifierFactory classifierFactory, long seed ) {
+        this.classifierFactory = classifierFactory;
+        this.seed = seed;
+    }
+
+    public double[] evaluate( FoldSource folds, Set<Integer> indexesOfBestAttributes ) {
+        double[] successRates = new double[folds.size()];
+        for ( int foldIndex = 0; foldIndex < folds.size(); foldIndex++ ) {
+            successRates[foldIndex] = evaluateFold( folds, foldIndex, indexesOfBestAttributes );
+        }
+        return successRates;
+    }
+
+    public double[] evaluate( FoldSource folds, Set<Integer> indexesOfBestAttributes, ExecutorService executor ) {
+        List<Future<Double>> results = new ArrayList<>( folds.size() );
+        for ( int foldIndex = 0; foldIndex < folds.size(); foldIndex++ ) {
+            int taskFoldIndex = foldIndex;
+            results.add( executor.submit( () -> evaluateFold( folds, taskFoldIndex, indexesOfBestAttributes ) ) );
+        }
+        double[] successRates = new double[folds.size()];
+        try {
+            for ( int foldIndex = 0; foldIndex < successRates.length; foldIndex++ ) {
+                successRates[foldIndex] = results.get( foldIndex ).get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            results.forEach( result -> result.cancel( true ) );
+            throw new IllegalStateException( "Fold evaluation interrupted", e );
+        } catch ( ExecutionException e ) {
+            results.forEach( result -> result.cancel( true ) );
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+        return successRates;
+    }
+
+    public static double meanSuccessRate( double[] successRates ) {
+        double successRate = 0.0;
+        for ( double foldSuccessRate : successRates ) {
+            successRate += foldSuccessRate;
+        }
+        return successRate / successRates.length;
+    }
+
+    /**
+     * The fold is built inside the task and becomes garbage as soon as the task ends.
+     */
+    private double evaluateFold( FoldSource folds, int foldIndex, Set<Integer> indexesOfBestAttributes ) {
+        IClassifier classifier = classifierFactory.createClassifier( seed + foldIndex );
+        return classifier.train( folds.createFold( foldIndex ), indexesOfBestAttributes );
+    }
+
+}
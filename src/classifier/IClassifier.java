@@ -1,10 +1,10 @@
 package classifier;
 
-import java.util.Map;
 import java.util.Set;
+import probesUtilities.FoldView;
 
 public interface IClassifier {
 
-    double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> indexesOfBestAttributes );
+    double train( FoldView fold, Set<Integer> indexesOfBestAttributes );
     
 }
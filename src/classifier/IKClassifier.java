@@ -1,10 +1,10 @@
 package classifier;
 
-import java.util.Map;
 import java.util.Set;
+import probesUtilities.FoldView;
 
 public interface IKClassifier{
 
-    double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> indexesOfBestAttributes, int kCount );
+    double train( FoldView fold, Set<Integer> indexesOfBestAttributes, int kCount );
     
 }
@@ -1,134 +1,235 @@
 package classifier;
 
 import Jama.Matrix;
-import exceptions.CannotInverseMatrixException;
 import java.util.*;
-import java.util.stream.Collectors;
 import probesUtilities.ClusterFinder;
-
-import static probesUtilities.MatrixUtilities.getProbe;
-import static probesUtilities.MatrixUtilities.pseudoinverseMoorePenrose;
-
+import probesUtilities.CovarianceShrinkage;
+import probesUtilities.DataSet;
+import probesUtilities.FoldView;
+import probesUtilities.MahalanobisDistance;
+
+/**
+ * k nearest means: every class is split into clusters and a probe gets the class of the cluster at the smallest
+ * Mahalanobis distance. Clusters often have fewer probes than attributes, so every cluster covariance is regularized:
+ * shrunk towards a scaled identity, or replaced by the variance pooled over all clusters of the fold when the cluster
+ * has a single probe (or only duplicates of one). A rank-deficient covariance would only be usable through its
+ * pseudoinverse, which ignores every direction the cluster does not span and so makes the cluster look close to almost
+ * any probe.
+ */
 public class KNMClassifier implements IClassifier {
 
     private final ClusterFinder clusterFinder;
+    private final CovarianceShrinkage covarianceShrinkage;
+    private int[] attributes;
+    private MahalanobisDistance[][] clustersPerClass;
+    private double miniBatchErrorGap = Double.NaN;
+
+    /**
+     * @param seed seed of the k-means++ seeding of every clustering, so a fold is clustered the same way in every run
+     */
+    public KNMClassifier( long seed ) {
+        this( seed, CovarianceShrinkage.LEDOIT_WOLF );
+    }
 
-    private Set<String> testSetsKeys;
-    private Set<String> trainingSetsKeys;
+    /**
+     * @param covarianceShrinkage regularization of the cluster covariances, DIAGONAL_LOADING or LEDOIT_WOLF
+     */
+    public KNMClassifier( long seed, CovarianceShrinkage covarianceShrinkage ) {
+        if ( covarianceShrinkage == CovarianceShrinkage.NONE ) {
+            throw new IllegalArgumentException( "k-NM cluster covariances are always regularized, choose diagonal loading or Ledoit-Wolf shrinkage" );
+        }
+        clusterFinder = new ClusterFinder( new Random( seed ) );
+        this.covarianceShrinkage = covarianceShrinkage;
+    }
 
-    public KNMClassifier() {
-        clusterFinder = new ClusterFinder();
+    /**
+     * Clusters the classes with mini-batch k-means, for classes too big for full batch iterations in every fold.
+     *
+     * @see ClusterFinder#useMiniBatches
+     */
+    public void useMiniBatchKMeans( int batchSize, int maximumIterations, double maximumCentroidDislocation ) {
+        clusterFinder.useMiniBatches( batchSize, maximumIterations, maximumCentroidDislocation );
     }
 
-    private Map<String, double[][]> extractSelectedAttributes( Map<String, double[][]> probesWithAllAttributes, List<Integer> indexesOfBestAttributes ) {
-        Map<String, double[][]> probesWithExtractedAttributes = new HashMap<>();
-        probesWithAllAttributes.keySet().stream().forEach( ( className ) -> {
-            double[][] probesInSet = probesWithAllAttributes.get( className );
-            double[][] probesInSetWithExtractedAttributes = new double[indexesOfBestAttributes.size()][probesInSet[0].length];
-            int index = 0;
-            for ( Integer indexOfBestAttribute : indexesOfBestAttributes ) {
-                probesInSetWithExtractedAttributes[index] = probesInSet[indexOfBestAttribute];
-                index++;
-            }
-            probesWithExtractedAttributes.put( className, probesInSetWithExtractedAttributes );
-        } );
+    /**
+     * Mean over the classes of the last fit of ClusterFinder.getErrorGap - how much worse the mini-batch clusterings
+     * are than full batch ones; NaN without mini-batches.
+     */
+    public double getMiniBatchErrorGap() {
+        return miniBatchErrorGap;
+    }
 
-        return probesWithExtractedAttributes;
+    /**
+     * Training probes of every class row by row (probe i of the class at i * attribute count).
+     */
+    private double[][] extractTrainingProbesPerClass( FoldView fold, int[] attributes ) {
+        DataSet dataSet = fold.getDataSet();
+        int[] trainingIndexes = fold.getTrainingIndexes();
+        int[] countOfTrainingProbesPerClass = new int[dataSet.getClassCount()];
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            countOfTrainingProbesPerClass[dataSet.getClassLabel( trainingIndexes[trainingPosition] )] += fold.getTrainingWeight( trainingPosition );
+        }
+        double[][] trainingProbesPerClass = new double[dataSet.getClassCount()][];
+        for ( int classIndex = 0; classIndex < trainingProbesPerClass.length; classIndex++ ) {
+            trainingProbesPerClass[classIndex] = new double[countOfTrainingProbesPerClass[classIndex] * attributes.length];
+            countOfTrainingProbesPerClass[classIndex] = 0;
+        }
+        // clustering needs the class probes side by side, so bootstrap duplicates are repeated here
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            int probeIndex = trainingIndexes[trainingPosition];
+            int classIndex = dataSet.getClassLabel( probeIndex );
+            for ( int duplicate = 0; duplicate < fold.getTrainingWeight( trainingPosition ); duplicate++ ) {
+                int probeOffset = countOfTrainingProbesPerClass[classIndex]++ * attributes.length;
+                for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                    trainingProbesPerClass[classIndex][probeOffset + attributeIndex] = dataSet.getValue( probeIndex, attributes[attributeIndex] );
+                }
+            }
+        }
+        return trainingProbesPerClass;
     }
 
-    private double[][] calculateCovarianceMatrix( double[][] probes, double[] clusterCentroid ) throws CannotInverseMatrixException {
-        int countOfAttributes = clusterCentroid.length;
-        int countOfProbes = probes[0].length;
-        double[][] covarianceMatrix = new double[countOfAttributes][countOfAttributes];
-        double[] meanValuesForEachAttribute = clusterCentroid;
-        for ( int firstAttributeIterator = 0; firstAttributeIterator < countOfAttributes; firstAttributeIterator++ ) {
-            for ( int secondAttributeIterator = 0; secondAttributeIterator < countOfAttributes; secondAttributeIterator++ ) {
-                double covarianceValue = 0.0;
-                for ( int probeIndex = 0; probeIndex < countOfProbes; probeIndex++ ) { //iteration over probes - we assume that every probe have all attributes
-                    covarianceValue += ( probes[firstAttributeIterator][probeIndex] - clusterCentroid[firstAttributeIterator] ) * ( probes[secondAttributeIterator][probeIndex] - meanValuesForEachAttribute[secondAttributeIterator] );
+    /**
+     * Covariance of every cluster around its centroid, from one pass over the probes of the class; the scatter, probe
+     * count and sum of |probe - centroid|^4 of cluster c go to covarianceMatrixes[c], countOfProbesPerCluster[c] and
+     * sumOfFourthPowersOfDeviations[c].
+     */
+    private void calculateCovarianceMatrixes( double[] probes, double[] clustersCentroids, int[] assignment, double[][][] covarianceMatrixes, int[] countOfProbesPerCluster, double[] sumOfFourthPowersOfDeviations ) {
+        int countOfAttributes = attributes.length;
+        double[] deviation = new double[countOfAttributes];
+        for ( int probeIndex = 0; probeIndex < assignment.length; probeIndex++ ) { //iteration over probes - we assume that every probe have all attributes
+            int clusterIndex = assignment[probeIndex];
+            double squaredDeviation = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
+                deviation[attributeIndex] = probes[probeIndex * countOfAttributes + attributeIndex] - clustersCentroids[clusterIndex * countOfAttributes + attributeIndex];
+                squaredDeviation += deviation[attributeIndex] * deviation[attributeIndex];
+            }
+            countOfProbesPerCluster[clusterIndex]++;
+            sumOfFourthPowersOfDeviations[clusterIndex] += squaredDeviation * squaredDeviation;
+            double[][] covarianceMatrix = covarianceMatrixes[clusterIndex];
+            for ( int firstAttributeIterator = 0; firstAttributeIterator < countOfAttributes; firstAttributeIterator++ ) {
+                for ( int secondAttributeIterator = firstAttributeIterator; secondAttributeIterator < countOfAttributes; secondAttributeIterator++ ) {
+                    covarianceMatrix[firstAttributeIterator][secondAttributeIterator] += deviation[firstAttributeIterator] * deviation[secondAttributeIterator];
                 }
-                covarianceValue = covarianceValue / ( countOfProbes - 1 );
-                covarianceMatrix[firstAttributeIterator][secondAttributeIterator] = covarianceValue;
             }
         }
-        Matrix matrix = new Matrix( covarianceMatrix );
-        try {
-            matrix = matrix.inverse();
-        } catch ( Exception e ) {
-            matrix = pseudoinverseMoorePenrose( matrix );
-            if ( matrix == null ) {
-                throw new CannotInverseMatrixException();
+        for ( int clusterIndex = 0; clusterIndex < covarianceMatrixes.length; clusterIndex++ ) {
+            double[][] covarianceMatrix = covarianceMatrixes[clusterIndex];
+            for ( int firstAttributeIterator = 0; firstAttributeIterator < countOfAttributes; firstAttributeIterator++ ) {
+                for ( int secondAttributeIterator = firstAttributeIterator; secondAttributeIterator < countOfAttributes; secondAttributeIterator++ ) {
+                    double covarianceValue = covarianceMatrix[firstAttributeIterator][secondAttributeIterator] / ( countOfProbesPerCluster[clusterIndex] - 1 );
+                    covarianceMatrix[firstAttributeIterator][secondAttributeIterator] = covarianceValue;
+                    covarianceMatrix[secondAttributeIterator][firstAttributeIterator] = covarianceValue;
+                }
             }
         }
-        return matrix.getArray();
     }
 
-    @Override
-    public double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> bestAttributes ) {
-
-        int countOfFailedClassifications = 0;
-        int countOfSuccessClassifications = 0;
-        probesSplitedIntoTrainingAndTestSets = extractSelectedAttributes( probesSplitedIntoTrainingAndTestSets, bestAttributes.stream().collect( Collectors.toList() ) );
-
-        trainingSetsKeys = probesSplitedIntoTrainingAndTestSets.keySet()
-                .stream()
-                .filter( key -> key.contains( "_training" ) )
-                .collect( Collectors.toSet() );
-        testSetsKeys = probesSplitedIntoTrainingAndTestSets.keySet()
-                .stream()
-                .filter( key -> key.contains( "_test" ) )
-                .collect( Collectors.toSet() );
-        Map<String, Map<Matrix, Matrix>> modsWithAssignedProbesForEachClass = new HashMap<>();
-        for ( String trainingSetsKey : trainingSetsKeys ) {
-            double[][] probes = probesSplitedIntoTrainingAndTestSets.get( trainingSetsKey );
-            modsWithAssignedProbesForEachClass.put( trainingSetsKey, clusterFinder.assignProbesToClusters( new Matrix( probes ) ) );
+    /**
+     * Fit phase: clusters the training probes of every class and factors the regularized covariance of every cluster
+     * once, so fitting takes a bounded time whatever the cluster sizes. Each cluster is kept as a MahalanobisDistance
+     * holding its centroid, its inverse covariance factor and its log determinant (getClusters).
+     */
+    public void fit( FoldView fold, Set<Integer> bestAttributes ) {
+        DataSet dataSet = fold.getDataSet();
+        attributes = dataSet.resolveAttributes( bestAttributes );
+        double[][] trainingProbesPerClass = extractTrainingProbesPerClass( fold, attributes );
+        int classCount = trainingProbesPerClass.length;
+        double[][] centroidsPerClass = new double[classCount][];
+        double[][][][] covarianceMatrixesPerClass = new double[classCount][][][];
+        int[][] countOfProbesPerClusterPerClass = new int[classCount][];
+        double[][] sumOfFourthPowersOfDeviationsPerClass = new double[classCount][];
+        double pooledScatterTrace = 0.0;
+        long pooledDegreesOfFreedom = 0;
+        double errorGapSum = 0.0;
+        int errorGapCount = 0;
+        for ( int classIndex = 0; classIndex < classCount; classIndex++ ) {
+            double[] probes = trainingProbesPerClass[classIndex];
+            int clusterCount = probes.length == 0 ? 0 : clusterFinder.findClusters( probes, attributes.length );
+            if ( clusterCount > 0 && !Double.isNaN( clusterFinder.getErrorGap() ) ) {
+                errorGapSum += clusterFinder.getErrorGap();
+                errorGapCount++;
+            }
+            covarianceMatrixesPerClass[classIndex] = new double[clusterCount][attributes.length][attributes.length];
+            countOfProbesPerClusterPerClass[classIndex] = new int[clusterCount];
+            sumOfFourthPowersOfDeviationsPerClass[classIndex] = new double[clusterCount];
+            if ( clusterCount > 0 ) {
+                centroidsPerClass[classIndex] = clusterFinder.getCentroids();
+                calculateCovarianceMatrixes( probes, centroidsPerClass[classIndex], clusterFinder.getAssignment(), covarianceMatrixesPerClass[classIndex], countOfProbesPerClusterPerClass[classIndex], sumOfFourthPowersOfDeviationsPerClass[classIndex] );
+            }
+            for ( int clusterIndex = 0; clusterIndex < clusterCount; clusterIndex++ ) {
+                int countOfProbes = countOfProbesPerClusterPerClass[classIndex][clusterIndex];
+                if ( countOfProbes < 2 ) {
+                    continue;
+                }
+                double[][] covarianceMatrix = covarianceMatrixesPerClass[classIndex][clusterIndex];
+                for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                    pooledScatterTrace += ( countOfProbes - 1 ) * covarianceMatrix[attributeIndex][attributeIndex];
+                }
+                pooledDegreesOfFreedom += countOfProbes - 1;
+            }
+        }
+        double pooledVariance = pooledScatterTrace / ( (double) pooledDegreesOfFreedom * attributes.length );
+        if ( !( pooledVariance > 0.0 ) || Double.isInfinite( pooledVariance ) ) {
+            pooledVariance = 1.0; // no cluster has any spread: plain Euclidean distances
+        }
 
+        clustersPerClass = new MahalanobisDistance[classCount][];
+        for ( int classIndex = 0; classIndex < classCount; classIndex++ ) {
+            double[][][] covarianceMatrixes = covarianceMatrixesPerClass[classIndex];
+            clustersPerClass[classIndex] = new MahalanobisDistance[covarianceMatrixes.length];
+            for ( int clusterIndex = 0; clusterIndex < covarianceMatrixes.length; clusterIndex++ ) {
+                double[] clusterCentroid = Arrays.copyOfRange( centroidsPerClass[classIndex], clusterIndex * attributes.length, ( clusterIndex + 1 ) * attributes.length );
+                covarianceShrinkage.shrinkOrReplace( covarianceMatrixes[clusterIndex], countOfProbesPerClusterPerClass[classIndex][clusterIndex], sumOfFourthPowersOfDeviationsPerClass[classIndex][clusterIndex], pooledVariance );
+                clustersPerClass[classIndex][clusterIndex] = new MahalanobisDistance( clusterCentroid, covarianceMatrixes[clusterIndex] );
+            }
         }
+        miniBatchErrorGap = errorGapCount == 0 ? Double.NaN : errorGapSum / errorGapCount;
+    }
 
-        for ( String testSetKey : testSetsKeys ) {
-            double[][] probesInTestSet = probesSplitedIntoTrainingAndTestSets.get( testSetKey );
-            for ( int probeIndex = 0; probeIndex < probesInTestSet[0].length; probeIndex++ ) {
-                Map<String, Double> distancesBetweenProbeAndClass = new HashMap<>();
-                Matrix probeAsMatrix = new Matrix( getProbe( probesInTestSet, probeIndex ), 1 );
-                for ( String trainingSetName : trainingSetsKeys ) {
-                    while ( true ) {
-                        try {
-                            double distanceToNearestClassCentroid = Double.MAX_VALUE;
-                            for ( Map.Entry<Matrix, Matrix> entrySet : modsWithAssignedProbesForEachClass.get( trainingSetName ).entrySet() ) {
-                                Matrix covarianceMatrix = new Matrix( calculateCovarianceMatrix( entrySet.getValue().getArray(), entrySet.getKey().getRowPackedCopy() ) );
-                                if ( !( covarianceMatrix.det() == 0 ) ) {
-                                    Matrix probeMinusMean = probeAsMatrix.minus( entrySet.getKey() );
-
-                                    double distanceToSet = probeMinusMean.times( covarianceMatrix ).times( probeMinusMean.transpose() ).get( 0, 0 );
-                                    if ( distanceToSet < distanceToNearestClassCentroid ) {
-                                        distanceToNearestClassCentroid = distanceToSet;
-                                    }
-                                }
-                            }
-                            distancesBetweenProbeAndClass.put( trainingSetName, distanceToNearestClassCentroid );
-                            break;
-                        } catch ( CannotInverseMatrixException e ) {
-                        }
-                    }
-                }
+    /**
+     * Fitted clusters per class index.
+     */
+    public MahalanobisDistance[][] getClusters() {
+        return clustersPerClass;
+    }
 
-                double smallestDistance = Double.MAX_VALUE;
-                String closestClass = "";
-                for ( String trainingSetKey : trainingSetsKeys ) {
-                    if ( distancesBetweenProbeAndClass.get( trainingSetKey ) < smallestDistance ) {
-                        smallestDistance = distancesBetweenProbeAndClass.get( trainingSetKey );
-                        closestClass = trainingSetKey;
-                    }
-                }
-                if ( testSetKey.contains( closestClass.replace( "_training", "" ).trim() ) ) {
-                    countOfSuccessClassifications++;
-                } else {
-                    countOfFailedClassifications++;
+    /**
+     * Predict phase: the class of the cluster with the smallest Mahalanobis distance to the probe, given over the
+     * attributes the model was fitted on; -1 when no cluster gives a distance. Allocates nothing.
+     */
+    public int predict( double[] probe ) {
+        double smallestDistance = Double.MAX_VALUE;
+        int closestClass = -1;
+        for ( int classIndex = 0; classIndex < clustersPerClass.length; classIndex++ ) {
+            for ( MahalanobisDistance cluster : clustersPerClass[classIndex] ) {
+                double distanceToSet = cluster.squaredDistance( probe );
+                if ( distanceToSet < smallestDistance ) {
+                    smallestDistance = distanceToSet;
+                    closestClass = classIndex;
                 }
             }
         }
+        return closestClass;
+    }
+
+    @Override
+    public double train( FoldView fold, Set<Integer> bestAttributes ) {
+        fit( fold, bestAttributes );
+        DataSet dataSet = fold.getDataSet();
+        double[] values = dataSet.getValues();
+        double[] probe = new double[attributes.length];
+        int countOfSuccessClassifications = 0;
+        for ( int testProbeIndex : fold.getTestIndexes() ) {
+            int probeOffset = testProbeIndex * dataSet.getFeatureCount();
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                probe[attributeIndex] = values[probeOffset + attributes[attributeIndex]];
+            }
+            if ( predict( probe ) == dataSet.getClassLabel( testProbeIndex ) ) {
+                countOfSuccessClassifications++;
+            }
+        }
 
-        double percentageAlgorithmCorrectness = ( (double) countOfSuccessClassifications / (double) ( countOfFailedClassifications + countOfSuccessClassifications ) ) * 100;
+        double percentageAlgorithmCorrectness = ( (double) countOfSuccessClassifications / (double) fold.getTestIndexes().length ) * 100;
         return percentageAlgorithmCorrectness;
     }
 
@@ -1,103 +1,384 @@
 package classifier;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Set;
+import neighbourSearch.BlockedDistanceEngine;
+import neighbourSearch.NeighbourHeap;
+import neighbourSearch.NeighbourIndex;
+import neighbourSearch.NeighbourIndexFactory;
+import neighbourSearch.NeighbourSearchMethod;
+import neighbourSearch.PairwiseDistanceCache;
+import probesUtilities.DataSet;
+import probesUtilities.FeatureSelector;
+import probesUtilities.FoldView;
+import probesUtilities.SparseProbes;
 
+/**
+ * k-NN over a fold. Selected attributes are resolved to an int[] once per fold, neighbours are compared by squared
+ * distance and kept in a bounded primitive max-heap, so classifying a probe allocates nothing. Neighbours are found by
+ * a scan over the training set or through an index built once per fold over the selected attributes. With an
+ * approximate index, a sample of the test probes is also searched exactly to measure the recall actually achieved.
+ * <p>
+ * The partial distance scan (PARTIAL_DISTANCE, and AUTO when it scans) sums the squared differences in decreasing
+ * order of the Fisher score of the attributes on the training fold and abandons a candidate once the sum exceeds the
+ * current k-th best distance. A candidate that survives is summed again in the order of the plain scan, so the
+ * neighbours, ties included, are the same as found by BRUTE_FORCE.
+ * <p>
+ * When the selected attributes of the dataset are sparse enough (see SparseProbes), every scan - BRUTE_FORCE,
+ * PARTIAL_DISTANCE and AUTO - works on the non-zeros only: a candidate is first bounded through the expanded form
+ * |a|^2 + |b|^2 - 2 a . b against the test probe scattered into a dense vector, and only candidates that can still
+ * enter the heap get their exact distance by merging the non-zeros of both probes, which is bit-identical to the dense
+ * sum.
+ */
 public class KNNClassifier implements IKClassifier {
 
-    private Map<String, double[][]> trainingSets;
-    private Map<String, double[][]> testSets;
-    private Set<String> keysInTrainingSets;
-    private Set<String> keysInTestSets;
+    /**
+     * In AUTO mode the index is dropped for the rest of the fold when, over the first queries, it computes more than
+     * this fraction of the distances a scan would.
+     */
+    private static final int QUERIES_BEFORE_FALLBACK_CHECK = 16;
+    private static final double FALLBACK_DISTANCE_RATIO = 0.5;
+    /**
+     * A partial sum is compared against the k-th best distance widened by this factor, so a difference in rounding
+     * between the two summation orders never abandons a candidate tied with the k-th best.
+     */
+    private static final double ABANDONMENT_MARGIN = 1.0 + 1e-12;
+    /**
+     * Rounding error allowed to the expanded sparse distance, relative to |a|^2 + |b|^2.
+     */
+    private static final double EXPANDED_DISTANCE_TOLERANCE = 1e-9;
 
-    private void getNamesOfTrainingAndTestSets() {
-        keysInTestSets = testSets.keySet();
-        keysInTrainingSets = trainingSets.keySet();
+    private final NeighbourIndexFactory neighbourIndexFactory;
+    private final int recallSampleSize;
+    private PairwiseDistanceCache pairwiseDistanceCache;
+
+    private FoldView fold;
+    private DataSet dataSet;
+    private double[] values;
+    private int featureCount;
+    private int[] attributes;
+    private int[] trainingIndexes;
+    private NeighbourHeap neighbourHeap;
+    private int[] votesPerClass;
+    private int[] closestVotingNeighbourPerClass;
+    private double[] trainingProbes;
+    private NeighbourIndex neighbourIndex;
+    private double[] query;
+    private int countOfQueries;
+    private NeighbourHeap exactNeighbourHeap;
+    private int countOfExactNeighbours;
+    private int countOfRecalledNeighbours;
+    private double[] cachedDistances;
+    private int[] attributesByFisherScore;
+    private SparseProbes sparseProbes;
+    private double[] scatteredTestProbe;
+    private long countOfComputedTerms;
+    private long countOfScanTerms;
+
+    public KNNClassifier() {
+        this( NeighbourSearchMethod.AUTO );
     }
 
-    private void splitPassedSetsIntoTestAndTraining( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets ) {
-        trainingSets = new HashMap<>();
-        testSets = new HashMap<>();
+    public KNNClassifier( NeighbourIndexFactory neighbourIndexFactory ) {
+        this( neighbourIndexFactory, 0 );
+    }
 
-        probesSplitedIntoTrainingAndTestSets.keySet().forEach( className -> {
-            if ( className.contains( "_test" ) ) {
-                testSets.put( className, probesSplitedIntoTrainingAndTestSets.get( className ) );
-            } else {
-                trainingSets.put( className, probesSplitedIntoTrainingAndTestSets.get( className ) );
-            }
-        } );
-        getNamesOfTrainingAndTestSets();
+    /**
+     * @param recallSampleSize how many test probes per fold are also searched exactly to measure the recall
+     */
+    public KNNClassifier( NeighbourIndexFactory neighbourIndexFactory, int recallSampleSize ) {
+        this.neighbourIndexFactory = neighbourIndexFactory;
+        this.recallSampleSize = recallSampleSize;
+    }
+
+    /**
+     * Makes the scan over the training set look distances up in a cache shared with other folds instead of computing
+     * them; the cache has to cover the dataset and attributes the classifier is trained on. Indexes and the blocked
+     * engine do not use it.
+     */
+    public void setPairwiseDistanceCache( PairwiseDistanceCache pairwiseDistanceCache ) {
+        this.pairwiseDistanceCache = pairwiseDistanceCache;
     }
 
     @Override
-    public double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> indexesOfBestAttributes, int kCount ) {
-        int countOfFailedAssignments = 0;
-        int countOfSuccessAssignments = 0;
-        splitPassedSetsIntoTestAndTraining( probesSplitedIntoTrainingAndTestSets );
-
-        for ( String keyInTestSet : keysInTestSets ) {
-            for ( int testProbeIndex = 0; testProbeIndex < testSets.get( keyInTestSet )[0].length; testProbeIndex++ ) {
-                int probeIndex = testProbeIndex;
-                List<ProbeDistance> distancesBetweenProbeAndNearestClassNeighbour = new ArrayList<>();
-                keysInTrainingSets.stream().forEach( ( keyInTrainingSet ) -> {
-                    List<Double> closestClassNeighbours = new ArrayList<>();
-                    for ( int trainingProbeIndex = 0; trainingProbeIndex < trainingSets.get( keyInTrainingSet )[0].length; trainingProbeIndex++ ) {
-                        double distanceToProbe = 0.0;
-                        for ( int attributeIndex = 0; attributeIndex < trainingSets.get( keyInTrainingSet ).length; attributeIndex++ ) {
-                            if ( indexesOfBestAttributes.isEmpty() || indexesOfBestAttributes.contains( attributeIndex ) ) {
-                                distanceToProbe += Math.pow( testSets.get( keyInTestSet )[attributeIndex][probeIndex] - trainingSets.get( keyInTrainingSet )[attributeIndex][trainingProbeIndex], 2 );
-                            }
-                        }
-                        distanceToProbe = Math.sqrt( distanceToProbe );
-                        if ( closestClassNeighbours.size() < kCount ) {
-                            closestClassNeighbours.add( distanceToProbe );
-                        } else {
-                            Collections.sort( closestClassNeighbours );
-
-                            if ( distanceToProbe < closestClassNeighbours.get( closestClassNeighbours.size() - 1 ) ) {
-                                closestClassNeighbours.set( closestClassNeighbours.size() - 1, distanceToProbe );
-                            }
-                        }
-                    }
-                    List<ProbeDistance> smallestProbeDistances = closestClassNeighbours.stream()
-                            .map( distance -> {
-                                return new ProbeDistance( keyInTrainingSet, distance );
-                            } ).collect( Collectors.toList() );
-
-                    distancesBetweenProbeAndNearestClassNeighbour.addAll( smallestProbeDistances );
-                } );
-
-                String closestClass = "";
-                Integer closestClassCount = null;
-                Map<String, Integer> countOfClosestNegihboursPerClass = new HashMap<>();
-
-                Collections.sort( distancesBetweenProbeAndNearestClassNeighbour );
-
-                for ( int i = 0; i < kCount; i++ ) {
-                    ProbeDistance probeDistance = distancesBetweenProbeAndNearestClassNeighbour.get( i );
-                    if ( countOfClosestNegihboursPerClass.containsKey( probeDistance.getClassName() ) ) {
-                        countOfClosestNegihboursPerClass.put( probeDistance.getClassName(), ( countOfClosestNegihboursPerClass.get( probeDistance.getClassName() ) + 1 ) );
-                    } else {
-                        countOfClosestNegihboursPerClass.put( probeDistance.getClassName(), 1 );
-                    }
+    public double train( FoldView fold, Set<Integer> indexesOfBestAttributes, int kCount ) {
+        return trainForEachK( fold, indexesOfBestAttributes, kCount )[kCount - 1];
+    }
+
+    /**
+     * Sweep over k: neighbours of each test probe are searched once, up to maximumK, and every k from 1 to maximumK is
+     * scored on them.
+     *
+     * @return success rate in percent for each k, at index k - 1
+     */
+    public double[] trainForEachK( FoldView fold, Set<Integer> indexesOfBestAttributes, int maximumK ) {
+        if ( maximumK < 1 ) {
+            throw new IllegalArgumentException( "k has to be at least 1, got " + maximumK );
+        }
+        if ( fold.getTrainingIndexes().length == 0 ) {
+            // no reference probes (an unlucky bootstrap draw or a fully reduced set): nothing is predicted and every
+            // test probe counts as misclassified
+            countOfExactNeighbours = 0;
+            countOfScanTerms = 0;
+            return new double[maximumK];
+        }
+        prepare( fold, indexesOfBestAttributes, maximumK );
+        int[] countOfSuccessAssignmentsPerK = new int[maximumK];
+
+        int[] testIndexes = fold.getTestIndexes();
+        NeighbourHeap[] batchNeighbourHeaps = null;
+        if ( neighbourIndexFactory == NeighbourSearchMethod.BLOCKED ) {
+            batchNeighbourHeaps = findNearestNeighboursInBatch( testIndexes );
+        }
+        int recallSampleStride = recallSampleSize > 0 ? Math.max( 1, testIndexes.length / recallSampleSize ) : 0;
+        for ( int testPosition = 0; testPosition < testIndexes.length; testPosition++ ) {
+            int testProbeIndex = testIndexes[testPosition];
+            NeighbourHeap testNeighbourHeap = neighbourHeap;
+            if ( batchNeighbourHeaps != null ) {
+                testNeighbourHeap = batchNeighbourHeaps[testPosition];
+            } else {
+                findNearestNeighbours( testProbeIndex );
+                if ( recallSampleStride > 0 && neighbourIndex != null && testPosition % recallSampleStride == 0
+                     && countOfExactNeighbours < recallSampleSize * neighbourHeap.capacity() ) {
+                    measureRecall( testProbeIndex );
                 }
+            }
+            voteForEachK( testNeighbourHeap, dataSet.getClassLabel( testProbeIndex ), countOfSuccessAssignmentsPerK );
+        }
+        double[] percentageAlgorithmCorrectnessPerK = new double[maximumK];
+        for ( int kIndex = 0; kIndex < maximumK; kIndex++ ) {
+            percentageAlgorithmCorrectnessPerK[kIndex] = ( (double) countOfSuccessAssignmentsPerK[kIndex] / (double) testIndexes.length ) * 100;
+        }
+        return percentageAlgorithmCorrectnessPerK;
+    }
+
+    /**
+     * Fraction of the exact k nearest neighbours the index found on the sampled test probes of the last fold; NaN when
+     * nothing was sampled (no recall sample requested, or the fold was scanned exactly).
+     */
+    public double getAchievedRecall() {
+        return countOfExactNeighbours == 0 ? Double.NaN : (double) countOfRecalledNeighbours / countOfExactNeighbours;
+    }
+
+    /**
+     * Fraction of the squared differences a plain scan would compute that the partial distance scan skipped in the
+     * last fold, net of the survivors summed again; NaN when the fold was not scanned with early abandonment.
+     */
+    public double getSkippedWorkFraction() {
+        return countOfScanTerms == 0 ? Double.NaN : 1.0 - (double) countOfComputedTerms / countOfScanTerms;
+    }
+
+    private void prepare( FoldView fold, Set<Integer> indexesOfBestAttributes, int kCount ) {
+        this.fold = fold;
+        dataSet = fold.getDataSet();
+        values = dataSet.getValues();
+        featureCount = dataSet.getFeatureCount();
+        attributes = dataSet.resolveAttributes( indexesOfBestAttributes );
+        trainingIndexes = fold.getTrainingIndexes();
+        neighbourHeap = new NeighbourHeap( Math.min( kCount, trainingIndexes.length ) );
+        votesPerClass = new int[dataSet.getClassCount()];
+        closestVotingNeighbourPerClass = new int[dataSet.getClassCount()];
+        query = new double[attributes.length];
+        countOfQueries = 0;
+        exactNeighbourHeap = new NeighbourHeap( neighbourHeap.capacity() );
+        countOfExactNeighbours = 0;
+        countOfRecalledNeighbours = 0;
+        if ( pairwiseDistanceCache != null ) {
+            if ( !pairwiseDistanceCache.covers( dataSet, attributes ) ) {
+                throw new IllegalArgumentException( "Pairwise distance cache was built for another dataset or attribute set" );
+            }
+            cachedDistances = new double[trainingIndexes.length];
+        }
+        countOfComputedTerms = 0;
+        countOfScanTerms = 0;
+        attributesByFisherScore = null;
+        sparseProbes = null;
+        boolean scanning = neighbourIndexFactory == NeighbourSearchMethod.BRUTE_FORCE || neighbourIndexFactory == NeighbourSearchMethod.PARTIAL_DISTANCE
+                           || neighbourIndexFactory == NeighbourSearchMethod.AUTO;
+        if ( pairwiseDistanceCache == null && scanning ) {
+            sparseProbes = SparseProbes.createIfSparse( dataSet, attributes );
+            scatteredTestProbe = sparseProbes == null ? null : new double[attributes.length];
+        }
+        if ( pairwiseDistanceCache == null && sparseProbes == null
+             && ( neighbourIndexFactory == NeighbourSearchMethod.PARTIAL_DISTANCE || neighbourIndexFactory == NeighbourSearchMethod.AUTO ) ) {
+            attributesByFisherScore = sortAttributesByFisherScore( fold );
+        }
+        boolean scanOnly = neighbourIndexFactory == NeighbourSearchMethod.BRUTE_FORCE || neighbourIndexFactory == NeighbourSearchMethod.PARTIAL_DISTANCE;
+        trainingProbes = scanOnly ? null : packProbes( trainingIndexes );
+        neighbourIndex = neighbourIndexFactory.createIndex( trainingProbes, attributes.length );
+    }
+
+    private int[] sortAttributesByFisherScore( FoldView fold ) {
+        double[] fisherScores = new FeatureSelector().getFisherScores( fold, attributes );
+        Integer[] order = new Integer[attributes.length];
+        for ( int attributeIndex = 0; attributeIndex < order.length; attributeIndex++ ) {
+            order[attributeIndex] = attributeIndex;
+        }
+        Arrays.sort( order, ( first, second ) -> Double.compare( fisherScores[second], fisherScores[first] ) );
+        int[] sortedAttributes = new int[order.length];
+        for ( int index = 0; index < order.length; index++ ) {
+            sortedAttributes[index] = attributes[order[index]];
+        }
+        return sortedAttributes;
+    }
+
+    /**
+     * Copies the selected attributes of the probes row by row into one array.
+     */
+    private double[] packProbes( int[] probeIndexes ) {
+        double[] probes = new double[probeIndexes.length * attributes.length];
+        for ( int position = 0; position < probeIndexes.length; position++ ) {
+            int probeOffset = probeIndexes[position] * featureCount;
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                probes[position * attributes.length + attributeIndex] = values[probeOffset + attributes[attributeIndex]];
+            }
+        }
+        return probes;
+    }
+
+    private NeighbourHeap[] findNearestNeighboursInBatch( int[] testIndexes ) {
+        NeighbourHeap[] batchNeighbourHeaps = new NeighbourHeap[testIndexes.length];
+        for ( int testPosition = 0; testPosition < testIndexes.length; testPosition++ ) {
+            batchNeighbourHeaps[testPosition] = new NeighbourHeap( neighbourHeap.capacity() );
+        }
+        new BlockedDistanceEngine( trainingProbes, attributes.length ).findNearestNeighbours( packProbes( testIndexes ), batchNeighbourHeaps );
+        return batchNeighbourHeaps;
+    }
+
+    private void findNearestNeighbours( int testProbeIndex ) {
+        neighbourHeap.clear();
+        if ( neighbourIndex != null ) {
+            int testOffset = testProbeIndex * featureCount;
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                query[attributeIndex] = values[testOffset + attributes[attributeIndex]];
+            }
+            neighbourIndex.search( query, neighbourHeap );
+            if ( ++countOfQueries == QUERIES_BEFORE_FALLBACK_CHECK && neighbourIndexFactory == NeighbourSearchMethod.AUTO
+                 && neighbourIndex.getDistanceEvaluations() > FALLBACK_DISTANCE_RATIO * countOfQueries * trainingIndexes.length ) {
+                neighbourIndex = null;
+            }
+            return;
+        }
+        scanTrainingProbes( testProbeIndex, neighbourHeap );
+    }
+
+    private void scanTrainingProbes( int testProbeIndex, NeighbourHeap heap ) {
+        if ( pairwiseDistanceCache != null ) {
+            pairwiseDistanceCache.fillSquaredDistances( testProbeIndex, trainingIndexes, cachedDistances );
+            for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+                heap.offer( cachedDistances[trainingPosition], trainingPosition );
+            }
+            return;
+        }
+        if ( sparseProbes != null ) {
+            scanSparseProbes( testProbeIndex, heap );
+            return;
+        }
+        if ( attributesByFisherScore != null ) {
+            scanWithEarlyAbandonment( testProbeIndex, heap );
+            return;
+        }
+        int testOffset = testProbeIndex * featureCount;
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            heap.offer( squaredDistance( testOffset, trainingIndexes[trainingPosition] * featureCount ), trainingPosition );
+        }
+    }
 
-                for ( String keyInCountOfClosestNegihboursPerClass : countOfClosestNegihboursPerClass.keySet() ) {
-                    if ( closestClassCount == null || closestClassCount < countOfClosestNegihboursPerClass.get( keyInCountOfClosestNegihboursPerClass ) ) {
-                        closestClass = keyInCountOfClosestNegihboursPerClass;
-                        closestClassCount = countOfClosestNegihboursPerClass.get( keyInCountOfClosestNegihboursPerClass );
-                    }
+    private void scanSparseProbes( int testProbeIndex, NeighbourHeap heap ) {
+        sparseProbes.scatter( testProbeIndex, scatteredTestProbe );
+        double testSquaredNorm = sparseProbes.getSquaredNorm( testProbeIndex );
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            int trainingProbeIndex = trainingIndexes[trainingPosition];
+            double squaredNorms = testSquaredNorm + sparseProbes.getSquaredNorm( trainingProbeIndex );
+            double expandedDistance = squaredNorms - 2.0 * sparseProbes.dot( trainingProbeIndex, scatteredTestProbe );
+            if ( expandedDistance - heap.worstDistance() <= EXPANDED_DISTANCE_TOLERANCE * squaredNorms ) {
+                heap.offer( sparseProbes.squaredDistance( testProbeIndex, trainingProbeIndex ), trainingPosition );
+            }
+        }
+        sparseProbes.clear( testProbeIndex, scatteredTestProbe );
+    }
+
+    private void scanWithEarlyAbandonment( int testProbeIndex, NeighbourHeap heap ) {
+        int testOffset = testProbeIndex * featureCount;
+        long countOfTerms = 0;
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            int trainingOffset = trainingIndexes[trainingPosition] * featureCount;
+            double bound = heap.worstDistance() * ABANDONMENT_MARGIN;
+            double partialDistance = 0.0;
+            int summedAttributes = 0;
+            while ( summedAttributes < attributesByFisherScore.length && partialDistance <= bound ) {
+                int attributeIndex = attributesByFisherScore[summedAttributes++];
+                double difference = values[testOffset + attributeIndex] - values[trainingOffset + attributeIndex];
+                partialDistance += difference * difference;
+            }
+            countOfTerms += summedAttributes;
+            if ( partialDistance <= bound ) {
+                countOfTerms += attributes.length;
+                heap.offer( squaredDistance( testOffset, trainingOffset ), trainingPosition );
+            }
+        }
+        countOfComputedTerms += countOfTerms;
+        countOfScanTerms += (long) trainingIndexes.length * attributes.length;
+    }
+
+    /**
+     * Squared distance over the selected attributes, summed in their order.
+     */
+    private double squaredDistance( int firstOffset, int secondOffset ) {
+        double distance = 0.0;
+        for ( int attributeIndex : attributes ) {
+            double difference = values[firstOffset + attributeIndex] - values[secondOffset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    private void measureRecall( int testProbeIndex ) {
+        exactNeighbourHeap.clear();
+        scanTrainingProbes( testProbeIndex, exactNeighbourHeap );
+        for ( int exactIndex = 0; exactIndex < exactNeighbourHeap.size(); exactIndex++ ) {
+            for ( int index = 0; index < neighbourHeap.size(); index++ ) {
+                if ( neighbourHeap.getPosition( index ) == exactNeighbourHeap.getPosition( exactIndex ) ) {
+                    countOfRecalledNeighbours++;
+                    break;
                 }
+            }
+        }
+        countOfExactNeighbours += exactNeighbourHeap.size();
+    }
 
-                if ( keyInTestSet.contains( closestClass.replace( "_training", "" ).trim() ) ) {
-                    countOfSuccessAssignments++;
-                } else {
-                    countOfFailedAssignments++;
+    /**
+     * Majority vote among the k nearest neighbours for every k at once, adding one vote per k; a probe drawn several
+     * times by bootstrap counts as that many neighbours. Ties go to the class whose neighbour is closest. When there
+     * are fewer neighbours than votes, larger k keep the vote of all of them.
+     */
+    private void voteForEachK( NeighbourHeap testNeighbourHeap, int actualClass, int[] countOfSuccessAssignmentsPerK ) {
+        testNeighbourHeap.sortAscending();
+        Arrays.fill( votesPerClass, 0 );
+        Arrays.fill( closestVotingNeighbourPerClass, Integer.MAX_VALUE );
+        int neighbourIndex = -1;
+        int remainingVotesOfNeighbour = 0;
+        int classIndex = -1;
+        int votedClass = -1;
+        for ( int kIndex = 0; kIndex < countOfSuccessAssignmentsPerK.length; kIndex++ ) {
+            if ( remainingVotesOfNeighbour == 0 && neighbourIndex + 1 < testNeighbourHeap.size() ) {
+                int trainingPosition = testNeighbourHeap.getPosition( ++neighbourIndex );
+                remainingVotesOfNeighbour = fold.getTrainingWeight( trainingPosition );
+                classIndex = dataSet.getClassLabel( trainingIndexes[trainingPosition] );
+                closestVotingNeighbourPerClass[classIndex] = Math.min( closestVotingNeighbourPerClass[classIndex], neighbourIndex );
+            }
+            if ( remainingVotesOfNeighbour > 0 ) {
+                remainingVotesOfNeighbour--;
+                votesPerClass[classIndex]++;
+                if ( votedClass < 0 || votesPerClass[classIndex] > votesPerClass[votedClass]
+                     || ( votesPerClass[classIndex] == votesPerClass[votedClass] && closestVotingNeighbourPerClass[classIndex] < closestVotingNeighbourPerClass[votedClass] ) ) {
+                    votedClass = classIndex;
                 }
             }
+            if ( votedClass == actualClass ) {
+                countOfSuccessAssignmentsPerK[kIndex]++;
+            }
         }
-        double percentageAlgorithmCorrectness = ( (double) countOfSuccessAssignments / (double) ( countOfFailedAssignments + countOfSuccessAssignments ) ) * 100;
-        return percentageAlgorithmCorrectness;
     }
 
 }
@@ -1,152 +1,254 @@
 package classifier;
 
-import Jama.Matrix;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Set;
-import java.util.stream.Collectors;
-
-import static probesUtilities.MatrixUtilities.getProbe;
-import static probesUtilities.MatrixUtilities.pseudoinverseMoorePenrose;
+import probesUtilities.CovarianceShrinkage;
+import probesUtilities.DataSet;
+import probesUtilities.FoldView;
+import probesUtilities.MahalanobisDistance;
+import probesUtilities.SparseProbes;
 
 public class NMClassifier implements IClassifier {
 
-    private Map<String, double[][]> trainingSets;
-    private Map<String, double[][]> testSets;
-    private Set<String> keysInTrainingSets;
-    private Set<String> keysInTestSets;
+    private final boolean pooledCovariance;
+    private final CovarianceShrinkage covarianceShrinkage;
+    private DataSet dataSet;
+    private int[] attributes;
+    private int[] countOfTrainingProbesPerClass;
 
-    private void getNamesOfTrainingAndTestSets() {
-        keysInTestSets = testSets.keySet();
-        keysInTrainingSets = trainingSets.keySet();
+    public NMClassifier() {
+        this( false );
     }
 
-    private void splitPassedSetsIntoTestAndTraining( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets ) {
-        trainingSets = new HashMap<>();
-        testSets = new HashMap<>();
-
-        probesSplitedIntoTrainingAndTestSets.keySet().forEach( className -> {
-            if ( className.contains( "_test" ) ) {
-                testSets.put( className, probesSplitedIntoTrainingAndTestSets.get( className ) );
-            } else {
-                trainingSets.put( className, probesSplitedIntoTrainingAndTestSets.get( className ) );
-            }
-        } );
-        getNamesOfTrainingAndTestSets();
+    /**
+     * @param pooledCovariance whether all classes share one covariance matrix pooled from their scatter (linear
+     * discriminant) instead of having their own (quadratic discriminant)
+     */
+    public NMClassifier( boolean pooledCovariance ) {
+        this( pooledCovariance, CovarianceShrinkage.NONE );
     }
 
-    private Map<String, double[]> calculateMeanValues( Map<String, double[][]> trainingSets ) {
-
-        Map<String, double[]> meanAttributesPerClass = new HashMap<>();
-        trainingSets.entrySet()
-                .forEach( entry -> {
-                    double[] means = new double[entry.getValue().length];
-                    for ( int attributeIndex = 0; attributeIndex < entry.getValue().length; attributeIndex++ ) {
-                        double mean = 0.0;
-                        for ( int probeIndex = 0; probeIndex < entry.getValue()[attributeIndex].length; probeIndex++ ) {
-                            mean += entry.getValue()[attributeIndex][probeIndex];
-                        }
-                        mean = mean / entry.getValue()[attributeIndex].length;
-                        means[attributeIndex] = mean;
-                    }
-                    meanAttributesPerClass.put( entry.getKey(), means );
-                } );
+    /**
+     * @param covarianceShrinkage regularization of the estimated covariance matrices
+     */
+    public NMClassifier( boolean pooledCovariance, CovarianceShrinkage covarianceShrinkage ) {
+        this.pooledCovariance = pooledCovariance;
+        this.covarianceShrinkage = covarianceShrinkage;
+    }
 
+    /**
+     * Means and covariances are weighted by the training probe multiplicities, which gives exactly the estimates of a
+     * training set with the duplicates materialized.
+     */
+    private double[][] calculateMeanValues( FoldView fold ) {
+        double[][] meanAttributesPerClass = new double[dataSet.getClassCount()][attributes.length];
+        countOfTrainingProbesPerClass = new int[dataSet.getClassCount()];
+        int[] trainingIndexes = fold.getTrainingIndexes();
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            int probeIndex = trainingIndexes[trainingPosition];
+            int weight = fold.getTrainingWeight( trainingPosition );
+            int classIndex = dataSet.getClassLabel( probeIndex );
+            countOfTrainingProbesPerClass[classIndex] += weight;
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                meanAttributesPerClass[classIndex][attributeIndex] += weight * dataSet.getValue( probeIndex, attributes[attributeIndex] );
+            }
+        }
+        for ( int classIndex = 0; classIndex < meanAttributesPerClass.length; classIndex++ ) {
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                meanAttributesPerClass[classIndex][attributeIndex] /= countOfTrainingProbesPerClass[classIndex];
+            }
+        }
         return meanAttributesPerClass;
     }
 
-    private Map<String, double[][]> extractSelectedAttributes( Map<String, double[][]> probesWithAllAttributes, List<Integer> indexesOfBestAttributes ) {
-        Map<String, double[][]> probesWithExtractedAttributes = new HashMap<>();
-        probesWithAllAttributes.keySet().stream().forEach( ( className ) -> {
-            double[][] probesInSet = probesWithAllAttributes.get( className );
-            double[][] probesInSetWithExtractedAttributes = new double[indexesOfBestAttributes.size()][probesInSet[0].length];
-            int index = 0;
-            for ( Integer indexOfBestAttribute : indexesOfBestAttributes ) {
-                probesInSetWithExtractedAttributes[index] = probesInSet[indexOfBestAttribute];
-                index++;
+    /**
+     * Mean of all training probes, the class means weighted by their probe counts.
+     */
+    private double[] calculateTrainingMean( double[][] meanAttributesPerClass ) {
+        double[] trainingMean = new double[attributes.length];
+        int countOfTrainingProbes = 0;
+        for ( int classIndex = 0; classIndex < meanAttributesPerClass.length; classIndex++ ) {
+            if ( countOfTrainingProbesPerClass[classIndex] == 0 ) {
+                continue;
             }
-            probesWithExtractedAttributes.put( className, probesInSetWithExtractedAttributes );
-        } );
-
-        return probesWithExtractedAttributes;
+            countOfTrainingProbes += countOfTrainingProbesPerClass[classIndex];
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                trainingMean[attributeIndex] += countOfTrainingProbesPerClass[classIndex] * meanAttributesPerClass[classIndex][attributeIndex];
+            }
+        }
+        for ( int attributeIndex = 0; attributeIndex < attributes.length && countOfTrainingProbes > 0; attributeIndex++ ) {
+            trainingMean[attributeIndex] /= countOfTrainingProbes;
+        }
+        return trainingMean;
     }
 
-    private Map<String, double[][]> calculateCovarianceMatrix( Map<String, double[][]> probesWithSelectedAttributes, Map<String, double[]> meanValuesForEachClass ) {
-        Map<String, double[][]> covarianceMatrixesForEachClass = new HashMap<>();
+    /**
+     * One MahalanobisDistance per class, factoring the class covariance once; null for classes without training probes.
+     */
+    private MahalanobisDistance[] createMahalanobisDistances( FoldView fold, double[][] meanValuesForEachClass ) {
+        double[][][] covarianceMatrixes = calculateCovarianceMatrix( fold, meanValuesForEachClass );
+        MahalanobisDistance[] mahalanobisDistances = new MahalanobisDistance[dataSet.getClassCount()];
+        for ( int classIndex = 0; classIndex < mahalanobisDistances.length; classIndex++ ) {
+            if ( countOfTrainingProbesPerClass[classIndex] > 0 ) {
+                mahalanobisDistances[classIndex] = new MahalanobisDistance( meanValuesForEachClass[classIndex], covarianceMatrixes[classIndex] );
+            }
+        }
+        return mahalanobisDistances;
+    }
 
-        probesWithSelectedAttributes.keySet().stream().forEach( className -> {
-            double[][] probesInClass = probesWithSelectedAttributes.get( className );
-            int countOfAttributes = probesInClass.length;
-            int countOfProbes = probesInClass[0].length;
-            double[][] covarianceMatrix = new double[countOfAttributes][countOfAttributes];
-            double[] meanValuesForEachAttribute = meanValuesForEachClass.get( className );
+    private double[][][] calculateCovarianceMatrix( FoldView fold, double[][] meanValuesForEachClass ) {
+        int countOfAttributes = attributes.length;
+        double[][][] covarianceMatrixesForEachClass = new double[dataSet.getClassCount()][countOfAttributes][countOfAttributes];
+        double[] sumOfFourthPowersOfDeviationsPerClass = new double[dataSet.getClassCount()];
+        int[] trainingIndexes = fold.getTrainingIndexes();
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) { //iteration over probes - we assume that every probe have all attributes
+            int probeIndex = trainingIndexes[trainingPosition];
+            int weight = fold.getTrainingWeight( trainingPosition );
+            int classIndex = dataSet.getClassLabel( probeIndex );
+            double[] meanValuesForEachAttribute = meanValuesForEachClass[classIndex];
+            double[][] covarianceMatrix = covarianceMatrixesForEachClass[classIndex];
+            double squaredDeviation = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
+                double difference = dataSet.getValue( probeIndex, attributes[attributeIndex] ) - meanValuesForEachAttribute[attributeIndex];
+                squaredDeviation += difference * difference;
+            }
+            sumOfFourthPowersOfDeviationsPerClass[classIndex] += weight * squaredDeviation * squaredDeviation;
             for ( int firstAttributeIterator = 0; firstAttributeIterator < countOfAttributes; firstAttributeIterator++ ) {
+                double firstDifference = weight * ( dataSet.getValue( probeIndex, attributes[firstAttributeIterator] ) - meanValuesForEachAttribute[firstAttributeIterator] );
                 for ( int secondAttributeIterator = 0; secondAttributeIterator < countOfAttributes; secondAttributeIterator++ ) {
-                    double covarianceValue = 0.0;
-                    for ( int probeIndex = 0; probeIndex < countOfProbes; probeIndex++ ) { //iteration over probes - we assume that every probe have all attributes
-                        covarianceValue += ( probesInClass[firstAttributeIterator][probeIndex] - meanValuesForEachAttribute[firstAttributeIterator] ) * ( probesInClass[secondAttributeIterator][probeIndex] - meanValuesForEachAttribute[secondAttributeIterator] );
-                    }
-                    covarianceValue = covarianceValue / ( countOfProbes - 1 );
-                    covarianceMatrix[firstAttributeIterator][secondAttributeIterator] = covarianceValue;
+                    covarianceMatrix[firstAttributeIterator][secondAttributeIterator] += firstDifference * ( dataSet.getValue( probeIndex, attributes[secondAttributeIterator] ) - meanValuesForEachAttribute[secondAttributeIterator] );
                 }
             }
-            Matrix matrix = new Matrix( covarianceMatrix );
-            try {
-                matrix = matrix.inverse();
-            } catch ( Exception e ) {
-                matrix = pseudoinverseMoorePenrose( matrix );
+        }
+        if ( pooledCovariance ) {
+            return poolCovarianceMatrixes( covarianceMatrixesForEachClass, sumOfFourthPowersOfDeviationsPerClass );
+        }
+        for ( int classIndex = 0; classIndex < covarianceMatrixesForEachClass.length; classIndex++ ) {
+            double scale = 1.0 / ( countOfTrainingProbesPerClass[classIndex] - 1 );
+            for ( double[] covarianceRow : covarianceMatrixesForEachClass[classIndex] ) {
+                for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
+                    covarianceRow[attributeIndex] *= scale;
+                }
             }
-            covarianceMatrixesForEachClass.put( className, matrix.getArray() );
-        } );
+            covarianceShrinkage.shrink( covarianceMatrixesForEachClass[classIndex], countOfTrainingProbesPerClass[classIndex], sumOfFourthPowersOfDeviationsPerClass[classIndex] );
+        }
+        return covarianceMatrixesForEachClass;
+    }
 
+    /**
+     * Sum of the class scatter matrices over (probe count - class count), the same matrix for every class. It is
+     * shrunk as a covariance of degrees of freedom + 1 probes.
+     */
+    private double[][][] poolCovarianceMatrixes( double[][][] scatterMatrixesForEachClass, double[] sumOfFourthPowersOfDeviationsPerClass ) {
+        int countOfAttributes = attributes.length;
+        double[][] pooledCovarianceMatrix = new double[countOfAttributes][countOfAttributes];
+        int degreesOfFreedom = 0;
+        double sumOfFourthPowersOfDeviations = 0.0;
+        for ( int classIndex = 0; classIndex < scatterMatrixesForEachClass.length; classIndex++ ) {
+            if ( countOfTrainingProbesPerClass[classIndex] == 0 ) {
+                continue;
+            }
+            degreesOfFreedom += countOfTrainingProbesPerClass[classIndex] - 1;
+            sumOfFourthPowersOfDeviations += sumOfFourthPowersOfDeviationsPerClass[classIndex];
+            for ( int firstAttributeIndex = 0; firstAttributeIndex < countOfAttributes; firstAttributeIndex++ ) {
+                for ( int secondAttributeIndex = 0; secondAttributeIndex < countOfAttributes; secondAttributeIndex++ ) {
+                    pooledCovarianceMatrix[firstAttributeIndex][secondAttributeIndex] += scatterMatrixesForEachClass[classIndex][firstAttributeIndex][secondAttributeIndex];
+                }
+            }
+        }
+        for ( double[] covarianceRow : pooledCovarianceMatrix ) {
+            for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
+                covarianceRow[attributeIndex] /= degreesOfFreedom;
+            }
+        }
+        covarianceShrinkage.shrink( pooledCovarianceMatrix, degreesOfFreedom + 1, sumOfFourthPowersOfDeviations );
+        double[][][] covarianceMatrixesForEachClass = new double[scatterMatrixesForEachClass.length][][];
+        Arrays.fill( covarianceMatrixesForEachClass, pooledCovarianceMatrix );
         return covarianceMatrixesForEachClass;
     }
 
     @Override
-    public double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> indexesOfBestAttributes ) {
-        Map<String, double[][]> probesSplitedIntoTrainingAndTestSetsWithExtreactedAttributes = extractSelectedAttributes( probesSplitedIntoTrainingAndTestSets, indexesOfBestAttributes.stream().collect( Collectors.toList() ) );
-        splitPassedSetsIntoTestAndTraining( probesSplitedIntoTrainingAndTestSetsWithExtreactedAttributes );
+    public double train( FoldView fold, Set<Integer> indexesOfBestAttributes ) {
+        dataSet = fold.getDataSet();
+        attributes = dataSet.resolveAttributes( indexesOfBestAttributes );
         double percentageAlgorithmCorrectness = 0.0;
-        int countOfFailedClassifications = 0;
         int countOfSuccessClassifications = 0;
 
-        Map<String, double[]> meanAttributesPerClass = calculateMeanValues( trainingSets );
-        Map<String, double[][]> covarianceMatrixes = calculateCovarianceMatrix( trainingSets, meanAttributesPerClass );
-
-        for ( String keyInTestSet : keysInTestSets ) {
-            double[][] probesInTestSet = testSets.get( keyInTestSet );
-            for ( int probeIndexInTestSet = 0; probeIndexInTestSet < probesInTestSet[0].length; probeIndexInTestSet++ ) {
-                Map<String, Double> distanceBetweenProbeAndCLassCentroid = new HashMap<>();
-                double[] probe = getProbe( probesInTestSet, probeIndexInTestSet );
-                Matrix probeAsMatrix = new Matrix( probe, 1 );
-                keysInTrainingSets.stream().forEach( ( keyInTrainingSet ) -> {
-                    Matrix covarianceMatrix = new Matrix( covarianceMatrixes.get( keyInTrainingSet ) );
-                    Matrix meanMatrix = new Matrix( meanAttributesPerClass.get( keyInTrainingSet ), 1 );
-                    Matrix probeMinusMean = probeAsMatrix.minus( meanMatrix );
-                    double distanceToSet = probeMinusMean.times( covarianceMatrix ).times( probeMinusMean.transpose() ).get( 0, 0 );
-                    distanceBetweenProbeAndCLassCentroid.put( keyInTrainingSet, distanceToSet );
-                } );
-                double smallestDistance = 1000000.0;
-                String closestClass = "";
-                Set<String> keySet = distanceBetweenProbeAndCLassCentroid.keySet();
-                for ( String key : keySet ) {
-                    if ( distanceBetweenProbeAndCLassCentroid.get( key ) < smallestDistance ) {
-                        smallestDistance = distanceBetweenProbeAndCLassCentroid.get( key );
-                        closestClass = key;
-                    }
-                }
-                if ( keyInTestSet.contains( closestClass.replace( "_training", "" ).trim() ) ) {
-                    countOfSuccessClassifications++;
-                } else {
-                    countOfFailedClassifications++;
-                }
+        double[][] meanAttributesPerClass = calculateMeanValues( fold );
+        MahalanobisDistance[] mahalanobisDistances = createMahalanobisDistances( fold, meanAttributesPerClass );
+        SparseProbes sparseProbes = SparseProbes.createIfSparse( dataSet, attributes );
+        if ( sparseProbes != null ) {
+            return classifySparseProbes( fold, sparseProbes, mahalanobisDistances );
+        }
+
+        NearestMeanDiscriminant nearestMeanDiscriminant = NearestMeanDiscriminant.compile( mahalanobisDistances, calculateTrainingMean( meanAttributesPerClass ) );
+        int[] testIndexes = fold.getTestIndexes();
+        double[] testProbes = new double[testIndexes.length * attributes.length];
+        double[] values = dataSet.getValues();
+        for ( int testPosition = 0; testPosition < testIndexes.length; testPosition++ ) {
+            int probeOffset = testIndexes[testPosition] * dataSet.getFeatureCount();
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                testProbes[testPosition * attributes.length + attributeIndex] = values[probeOffset + attributes[attributeIndex]];
+            }
+        }
+        int[] predictedClasses = new int[testIndexes.length];
+        nearestMeanDiscriminant.predict( testProbes, predictedClasses );
+        for ( int testPosition = 0; testPosition < testIndexes.length; testPosition++ ) {
+            if ( predictedClasses[testPosition] == dataSet.getClassLabel( testIndexes[testPosition] ) ) {
+                countOfSuccessClassifications++;
             }
         }
 
-        percentageAlgorithmCorrectness = ( (double) countOfSuccessClassifications / (double) ( countOfFailedClassifications + countOfSuccessClassifications ) ) * 100;
+        percentageAlgorithmCorrectness = ( (double) countOfSuccessClassifications / (double) testIndexes.length ) * 100;
 
         return percentageAlgorithmCorrectness;
     }
 
+    /**
+     * (x - m)^T S (x - m) expanded to x^T S x - 2 x^T (S m) + m^T S m: with S m and m^T S m computed once per class,
+     * a probe costs the square of its non-zero count instead of the square of the attribute count. S is the inverse
+     * covariance matrix of the class, made explicit from its factor.
+     */
+    private double classifySparseProbes( FoldView fold, SparseProbes sparseProbes, MahalanobisDistance[] mahalanobisDistances ) {
+        double[][][] inverseCovarianceMatrixes = new double[dataSet.getClassCount()][][];
+        double[][] meanAttributesPerClass = new double[dataSet.getClassCount()][];
+        double[][] inverseCovarianceTimesMean = new double[dataSet.getClassCount()][attributes.length];
+        double[] meanTimesInverseCovarianceTimesMean = new double[dataSet.getClassCount()];
+        for ( int classIndex = 0; classIndex < dataSet.getClassCount(); classIndex++ ) {
+            if ( mahalanobisDistances[classIndex] == null ) {
+                continue;
+            }
+            inverseCovarianceMatrixes[classIndex] = mahalanobisDistances[classIndex].getInverseCovariance();
+            meanAttributesPerClass[classIndex] = mahalanobisDistances[classIndex].getMean();
+            for ( int firstAttributeIndex = 0; firstAttributeIndex < attributes.length; firstAttributeIndex++ ) {
+                for ( int secondAttributeIndex = 0; secondAttributeIndex < attributes.length; secondAttributeIndex++ ) {
+                    inverseCovarianceTimesMean[classIndex][firstAttributeIndex] += inverseCovarianceMatrixes[classIndex][firstAttributeIndex][secondAttributeIndex] * meanAttributesPerClass[classIndex][secondAttributeIndex];
+                }
+                meanTimesInverseCovarianceTimesMean[classIndex] += meanAttributesPerClass[classIndex][firstAttributeIndex] * inverseCovarianceTimesMean[classIndex][firstAttributeIndex];
+            }
+        }
+
+        int countOfSuccessClassifications = 0;
+        for ( int probeIndexInTestSet : fold.getTestIndexes() ) {
+            double smallestDistance = Double.MAX_VALUE;
+            int closestClass = -1;
+            for ( int classIndex = 0; classIndex < dataSet.getClassCount(); classIndex++ ) {
+                if ( countOfTrainingProbesPerClass[classIndex] == 0 ) {
+                    continue;
+                }
+                double distanceToSet = sparseProbes.quadraticForm( probeIndexInTestSet, inverseCovarianceMatrixes[classIndex] )
+                                       - 2.0 * sparseProbes.dot( probeIndexInTestSet, inverseCovarianceTimesMean[classIndex] )
+                                       + meanTimesInverseCovarianceTimesMean[classIndex];
+                if ( distanceToSet < smallestDistance ) {
+                    smallestDistance = distanceToSet;
+                    closestClass = classIndex;
+                }
+            }
+            if ( closestClass == dataSet.getClassLabel( probeIndexInTestSet ) ) {
+                countOfSuccessClassifications++;
+            }
+        }
+        return ( (double) countOfSuccessClassifications / (double) fold.getTestIndexes().length ) * 100;
+    }
+
 }
@@ -1,14 +1,26 @@
 package classifier;
 
-import java.util.Map;
 import java.util.Set;
+import neighbourSearch.NeighbourIndexFactory;
+import neighbourSearch.NeighbourSearchMethod;
+import probesUtilities.FoldView;
 
 public class NNClassifier implements IClassifier {
 
+    private final NeighbourIndexFactory neighbourIndexFactory;
+
+    public NNClassifier() {
+        this( NeighbourSearchMethod.AUTO );
+    }
+
+    public NNClassifier( NeighbourIndexFactory neighbourIndexFactory ) {
+        this.neighbourIndexFactory = neighbourIndexFactory;
+    }
+
     @Override
-    public double train( Map<String, double[][]> probesSplitedIntoTrainingAndTestSets, Set<Integer> indexesOfBestAttributes ) {
-        IKClassifier iKClassifier = new KNNClassifier();
-        return iKClassifier.train( probesSplitedIntoTrainingAndTestSets, indexesOfBestAttributes, 1 );
+    public double train( FoldView fold, Set<Integer> indexesOfBestAttributes ) {
+        IKClassifier iKClassifier = new KNNClassifier( neighbourIndexFactory );
+        return iKClassifier.train( fold, indexesOfBestAttributes, 1 );
     }
 
 }
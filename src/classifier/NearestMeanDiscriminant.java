@@ -0,0 +1,187 @@
+package classifier;
+
+import java.util.Arrays;
+import probesUtilities.MahalanobisDistance;
+
+/**
+ * Nearest-mean decision compiled ahead of time from the whitening factors W_c of the class covariances (L_c^-1 of the
+ * Cholesky factor, or the pseudoinverse factor), so that the squared Mahalanobis distance to class c is
+ * |W_c (x - m_c)|^2.
+ * <p>
+ * With a covariance of its own per class (quadratic discriminant) every class costs one triangular product
+ * W_c (x - m_c), the same work as the forward substitution of MahalanobisDistance and without expanding the square.
+ * When all classes share the whitening factor (for example a pooled covariance), the decision is linear. Probes and
+ * means are then centred on one shared reference mean r (z = x - r, mu_c = m_c - r), |W z|^2 is common to every class
+ * and cancels, and with a_c = W^T W mu_c and k_c = |W mu_c|^2 choosing the nearest class only needs, for every class
+ * c but a reference class, the difference
+ * <pre>
+ * g_c(z) = -2 (a_c - a_ref)^T z + (k_c - k_ref)
+ * </pre>
+ * one dot product per class. Centring keeps the terms of the order of the class spread however far the probes are from
+ * the origin. Either way ties go to the lower class index.
+ * <p>
+ * Classes whose covariance could not be estimated (non-finite) are never predicted, as with the distances. Predictions
+ * centre probes in a buffer allocated once, so an instance must not be shared between threads.
+ */
+public class NearestMeanDiscriminant {
+
+    private final int dimension;
+    private final double[] referenceMean;
+    /**
+     * Classes that can be predicted, in ascending order, with their coefficients at the same position.
+     */
+    private final int[] classes;
+    /**
+     * Quadratic form: whitening factor and mean of every class; null when linear.
+     */
+    private final double[][][] whiteningFactors;
+    private final double[][] means;
+    private final boolean[] lowerTriangular;
+    /**
+     * Linear form: coefficients of every class but the first, at position class - 1; null when quadratic.
+     */
+    private final double[][] linearCoefficients;
+    private final double[] constants;
+    private final double[] centredProbe;
+
+    private NearestMeanDiscriminant( double[] referenceMean, int[] classes, double[][][] whiteningFactors, double[][] means, boolean[] lowerTriangular, double[][] linearCoefficients, double[] constants ) {
+        this.dimension = referenceMean.length;
+        this.referenceMean = referenceMean;
+        this.classes = classes;
+        this.whiteningFactors = whiteningFactors;
+        this.means = means;
+        this.lowerTriangular = lowerTriangular;
+        this.linearCoefficients = linearCoefficients;
+        this.constants = constants;
+        centredProbe = new double[dimension];
+    }
+
+    /**
+     * @param mahalanobisDistances trained distance per class index, null for classes without training probes
+     * @param referenceMean mean the probes and class means are centred on, typically the mean of all training probes
+     */
+    public static NearestMeanDiscriminant compile( MahalanobisDistance[] mahalanobisDistances, double[] referenceMean ) {
+        int classCount = 0;
+        int[] classes = new int[mahalanobisDistances.length];
+        for ( int classIndex = 0; classIndex < mahalanobisDistances.length; classIndex++ ) {
+            if ( mahalanobisDistances[classIndex] != null && mahalanobisDistances[classIndex].isFinite() ) {
+                classes[classCount++] = classIndex;
+            }
+        }
+        classes = Arrays.copyOf( classes, classCount );
+        int dimension = referenceMean.length;
+        double[][][] whiteningFactors = new double[classCount][][];
+        double[][] means = new double[classCount][];
+        boolean[] lowerTriangular = new boolean[classCount];
+        boolean linear = true;
+        for ( int index = 0; index < classCount; index++ ) {
+            MahalanobisDistance mahalanobisDistance = mahalanobisDistances[classes[index]];
+            whiteningFactors[index] = mahalanobisDistance.getWhiteningFactor();
+            means[index] = mahalanobisDistance.getMean();
+            lowerTriangular[index] = mahalanobisDistance.isCholeskyFactored();
+            linear &= Arrays.deepEquals( whiteningFactors[index], whiteningFactors[0] );
+        }
+        if ( !linear ) {
+            return new NearestMeanDiscriminant( referenceMean, classes, whiteningFactors, means, lowerTriangular, null, null );
+        }
+
+        // a_c = W^T (W mu_c), k_c = |W mu_c|^2
+        double[][] backProjectedMeans = new double[classCount][dimension];
+        double[] squaredNorms = new double[classCount];
+        for ( int index = 0; index < classCount; index++ ) {
+            double[][] whiteningFactor = whiteningFactors[index];
+            for ( int row = 0; row < whiteningFactor.length; row++ ) {
+                double whitenedValue = 0.0;
+                for ( int column = 0; column < dimension; column++ ) {
+                    whitenedValue += whiteningFactor[row][column] * ( means[index][column] - referenceMean[column] );
+                }
+                squaredNorms[index] += whitenedValue * whitenedValue;
+                for ( int column = 0; column < dimension; column++ ) {
+                    backProjectedMeans[index][column] += whiteningFactor[row][column] * whitenedValue;
+                }
+            }
+        }
+        int otherCount = Math.max( 0, classCount - 1 );
+        double[][] linearCoefficients = new double[otherCount][dimension];
+        double[] constants = new double[otherCount];
+        for ( int other = 0; other < otherCount; other++ ) {
+            int index = other + 1;
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                linearCoefficients[other][attributeIndex] = 2.0 * ( backProjectedMeans[0][attributeIndex] - backProjectedMeans[index][attributeIndex] );
+            }
+            constants[other] = squaredNorms[index] - squaredNorms[0];
+        }
+        return new NearestMeanDiscriminant( referenceMean, classes, null, null, null, linearCoefficients, constants );
+    }
+
+    public boolean isLinear() {
+        return linearCoefficients != null;
+    }
+
+    /**
+     * @return predicted class index, -1 when no class could be trained
+     */
+    public int predict( double[] probes, int probeOffset ) {
+        if ( classes.length == 0 ) {
+            return -1;
+        }
+        return linearCoefficients != null ? predictLinear( probes, probeOffset ) : predictQuadratic( probes, probeOffset );
+    }
+
+    /**
+     * Predicts every probe of a row-packed batch (probe i at i * dimension) into predictedClasses[i].
+     */
+    public void predict( double[] probes, int[] predictedClasses ) {
+        for ( int probe = 0; probe < predictedClasses.length; probe++ ) {
+            predictedClasses[probe] = predict( probes, probe * dimension );
+        }
+    }
+
+    private int predictLinear( double[] probes, int probeOffset ) {
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            centredProbe[attributeIndex] = probes[probeOffset + attributeIndex] - referenceMean[attributeIndex];
+        }
+        int predictedClass = classes[0];
+        double smallestDiscriminant = 0.0;
+        for ( int other = 0; other < linearCoefficients.length; other++ ) {
+            double discriminant = constants[other];
+            double[] linearCoefficient = linearCoefficients[other];
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                discriminant += linearCoefficient[attributeIndex] * centredProbe[attributeIndex];
+            }
+            if ( discriminant < smallestDiscriminant ) {
+                smallestDiscriminant = discriminant;
+                predictedClass = classes[other + 1];
+            }
+        }
+        return predictedClass;
+    }
+
+    private int predictQuadratic( double[] probes, int probeOffset ) {
+        int predictedClass = -1;
+        double smallestDistance = Double.MAX_VALUE;
+        for ( int index = 0; index < classes.length; index++ ) {
+            double[][] whiteningFactor = whiteningFactors[index];
+            double[] mean = means[index];
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                centredProbe[attributeIndex] = probes[probeOffset + attributeIndex] - mean[attributeIndex];
+            }
+            double distance = 0.0;
+            for ( int row = 0; row < whiteningFactor.length; row++ ) {
+                double[] factorRow = whiteningFactor[row];
+                int columnCount = lowerTriangular[index] ? row + 1 : dimension;
+                double value = 0.0;
+                for ( int column = 0; column < columnCount; column++ ) {
+                    value += factorRow[column] * centredProbe[column];
+                }
+                distance += value * value;
+            }
+            if ( distance < smallestDistance ) {
+                smallestDistance = distance;
+                predictedClass = classes[index];
+            }
+        }
+        return predictedClass;
+    }
+
+}
@@ -0,0 +1,180 @@
+package classifier;
+
+import java.util.Arrays;
+import java.util.Set;
+import neighbourSearch.NeighbourHeap;
+import neighbourSearch.NeighbourIndex;
+import neighbourSearch.NeighbourSearchMethod;
+import probesUtilities.DataSet;
+import probesUtilities.FoldView;
+
+/**
+ * Shrinks the training set of a fold to a smaller reference set for NNClassifier and KNNClassifier. Only the training
+ * side of the fold changes; kept probes keep their training weights and their order. The reduced set can be empty
+ * (editing may drop every probe), which KNNClassifier scores as all test probes misclassified.
+ * <ul>
+ * <li>EDITED (Wilson) drops every training probe misclassified by the vote of its EDITING_NEIGHBOURS nearest other
+ * training probes, which removes noise and smooths class borders but keeps the interior of the classes.</li>
+ * <li>CONDENSED (Hart) keeps a subset that classifies every training probe correctly by 1-NN, which removes the
+ * interior of the classes but keeps noise.</li>
+ * <li>EDITED_CONDENSED edits first and condenses what is left.</li>
+ * </ul>
+ */
+public enum PrototypeReduction {
+
+    CONDENSED,
+    EDITED,
+    EDITED_CONDENSED;
+
+    public static final int EDITING_NEIGHBOURS = 3;
+
+    public FoldView reduce( FoldView fold, Set<Integer> indexesOfBestAttributes ) {
+        DataSet dataSet = fold.getDataSet();
+        int[] attributes = dataSet.resolveAttributes( indexesOfBestAttributes );
+        int[] trainingIndexes = fold.getTrainingIndexes();
+        if ( trainingIndexes.length == 0 ) {
+            return fold;
+        }
+        int[] classLabels = new int[trainingIndexes.length];
+        double[] trainingProbes = new double[trainingIndexes.length * attributes.length];
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            classLabels[trainingPosition] = dataSet.getClassLabel( trainingIndexes[trainingPosition] );
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                trainingProbes[trainingPosition * attributes.length + attributeIndex] = dataSet.getValue( trainingIndexes[trainingPosition], attributes[attributeIndex] );
+            }
+        }
+
+        int[] keptPositions = new int[trainingIndexes.length];
+        for ( int trainingPosition = 0; trainingPosition < keptPositions.length; trainingPosition++ ) {
+            keptPositions[trainingPosition] = trainingPosition;
+        }
+        if ( this != CONDENSED ) {
+            keptPositions = edit( fold, trainingProbes, attributes.length, classLabels, dataSet.getClassCount() );
+        }
+        if ( this != EDITED ) {
+            keptPositions = condense( keptPositions, trainingProbes, attributes.length, classLabels );
+        }
+
+        int[] keptIndexes = new int[keptPositions.length];
+        int[] keptWeights = fold.isWeighted() ? new int[keptPositions.length] : null;
+        for ( int keptIndex = 0; keptIndex < keptPositions.length; keptIndex++ ) {
+            keptIndexes[keptIndex] = trainingIndexes[keptPositions[keptIndex]];
+            if ( keptWeights != null ) {
+                keptWeights[keptIndex] = fold.getTrainingWeight( keptPositions[keptIndex] );
+            }
+        }
+        return new FoldView( dataSet, keptIndexes, keptWeights, fold.getTestIndexes() );
+    }
+
+    /**
+     * Every decision is taken against the whole training set (not the already edited one), so the result does not
+     * depend on the order of the probes. Extra copies of a bootstrap duplicate are its own closest neighbours, as they
+     * would be with the duplicates materialized; ties go to the class whose neighbour is closest.
+     */
+    private static int[] edit( FoldView fold, double[] trainingProbes, int dimension, int[] classLabels, int classCount ) {
+        int trainingCount = classLabels.length;
+        if ( trainingCount == 0 ) {
+            return new int[0];
+        }
+        NeighbourIndex neighbourIndex = NeighbourSearchMethod.AUTO.createIndex( trainingProbes, dimension );
+        NeighbourHeap neighbourHeap = new NeighbourHeap( Math.min( EDITING_NEIGHBOURS + 1, trainingCount ) );
+        double[] query = new double[dimension];
+        int[] votesPerClass = new int[classCount];
+        int[] keptPositions = new int[trainingCount];
+        int keptCount = 0;
+        for ( int trainingPosition = 0; trainingPosition < trainingCount; trainingPosition++ ) {
+            neighbourHeap.clear();
+            System.arraycopy( trainingProbes, trainingPosition * dimension, query, 0, dimension );
+            if ( neighbourIndex != null ) {
+                neighbourIndex.search( query, neighbourHeap );
+            } else {
+                for ( int otherPosition = 0; otherPosition < trainingCount; otherPosition++ ) {
+                    neighbourHeap.offer( squaredDistance( trainingProbes, trainingPosition, otherPosition, dimension ), otherPosition );
+                }
+            }
+            neighbourHeap.sortAscending();
+
+            Arrays.fill( votesPerClass, 0 );
+            int ownClass = classLabels[trainingPosition];
+            int remainingVotes = EDITING_NEIGHBOURS;
+            int votedClass = -1;
+            int copiesOfProbe = Math.min( remainingVotes, fold.getTrainingWeight( trainingPosition ) - 1 );
+            if ( copiesOfProbe > 0 ) {
+                votesPerClass[ownClass] += copiesOfProbe;
+                remainingVotes -= copiesOfProbe;
+                votedClass = ownClass;
+            }
+            for ( int neighbour = 0; neighbour < neighbourHeap.size() && remainingVotes > 0; neighbour++ ) {
+                int neighbourPosition = neighbourHeap.getPosition( neighbour );
+                if ( neighbourPosition == trainingPosition ) {
+                    continue;
+                }
+                int votes = Math.min( remainingVotes, fold.getTrainingWeight( neighbourPosition ) );
+                int neighbourClass = classLabels[neighbourPosition];
+                votesPerClass[neighbourClass] += votes;
+                remainingVotes -= votes;
+                if ( votedClass < 0 || votesPerClass[neighbourClass] > votesPerClass[votedClass] ) {
+                    votedClass = neighbourClass;
+                }
+            }
+            if ( votedClass < 0 || votedClass == ownClass ) {
+                keptPositions[keptCount++] = trainingPosition;
+            }
+        }
+        return Arrays.copyOf( keptPositions, keptCount );
+    }
+
+    /**
+     * Starts from the first candidate and keeps adding every candidate that the 1-NN rule on the kept ones
+     * misclassifies, passing over the candidates until a pass adds nothing.
+     */
+    private static int[] condense( int[] candidatePositions, double[] trainingProbes, int dimension, int[] classLabels ) {
+        if ( candidatePositions.length == 0 ) {
+            return candidatePositions;
+        }
+        boolean[] kept = new boolean[classLabels.length];
+        int[] keptPositions = new int[candidatePositions.length];
+        int keptCount = 0;
+        kept[candidatePositions[0]] = true;
+        keptPositions[keptCount++] = candidatePositions[0];
+        boolean added = true;
+        while ( added ) {
+            added = false;
+            for ( int candidatePosition : candidatePositions ) {
+                if ( kept[candidatePosition] ) {
+                    continue;
+                }
+                double smallestDistance = Double.POSITIVE_INFINITY;
+                int closestPosition = -1;
+                for ( int keptIndex = 0; keptIndex < keptCount; keptIndex++ ) {
+                    int keptPosition = keptPositions[keptIndex];
+                    double distance = squaredDistance( trainingProbes, candidatePosition, keptPosition, dimension );
+                    if ( distance < smallestDistance || ( distance == smallestDistance && keptPosition < closestPosition ) ) {
+                        smallestDistance = distance;
+                        closestPosition = keptPosition;
+                    }
+                }
+                if ( classLabels[closestPosition] != classLabels[candidatePosition] ) {
+                    kept[candidatePosition] = true;
+                    keptPositions[keptCount++] = candidatePosition;
+                    added = true;
+                }
+            }
+        }
+        keptPositions = Arrays.copyOf( keptPositions, keptCount );
+        Arrays.sort( keptPositions );
+        return keptPositions;
+    }
+
+    private static double squaredDistance( double[] probes, int firstPosition, int secondPosition, int dimension ) {
+        int firstOffset = firstPosition * dimension;
+        int secondOffset = secondPosition * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = probes[firstOffset + attributeIndex] - probes[secondOffset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+}
@@ -0,0 +1,508 @@
+package main;
+
+import classifier.*;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import neighbourSearch.NeighbourIndexFactory;
+import neighbourSearch.NeighbourSearchMethod;
+import neighbourSearch.PairwiseDistanceCache;
+import neighbourSearch.ProductQuantizedIndex;
+import neighbourSearch.QuantizedIndex;
+import neighbourSearch.RandomProjectionForest;
+import neighbourSearch.ScalarQuantizedIndex;
+import probesUtilities.ColumnarDataSetFile;
+import probesUtilities.CovarianceShrinkage;
+import probesUtilities.DataSet;
+import probesUtilities.DataSetReader;
+import probesUtilities.FeatureSelector;
+import probesUtilities.FoldSource;
+import probesUtilities.FoldView;
+import probesUtilities.MatrixUtilities;
+import probesUtilities.PCAFeatureExtractor;
+import probesUtilities.ProbePerClassSeparator;
+
+import static probesUtilities.ProbesPerTrainingAndTestSetSplitter.*;
+
+/**
+ * Headless entry point running the whole pipeline (load, feature selection, validation split, classification) without
+ * Swing, e.g.:
+ * <pre>
+ * java main.BatchRunner --data Maple_Oak.txt --selection fisher --features 3 --validation cross --sets 10 --classifier knn --k 3
+ * </pre>
+ */
+public class BatchRunner {
+
+    private static final String USAGE = "Usage: BatchRunner --data <file.txt|file." + ColumnarDataSetFile.EXTENSION + ">\n"
+                                        + "    [--convert <output." + ColumnarDataSetFile.EXTENSION + ">]\n"
+                                        + "    [--selection none|fisher|sfs|pca] [--features <n>] [--energy <percent>]\n"
+                                        + "    [--validation simple|cross|bootstrap] [--training-part <percent>] [--sets <n>] [--seed <n>]\n"
+                                        + "    [--classifier nn|nm|knn|knm] [--k <n>] [--search auto|brute|partial|kd|ball|blocked|forest|sq|pq]\n"
+                                        + "    [--trees <n>] [--leaf-size <n>] [--recall-sample <n>] [--k-sweep <maximum k>]\n"
+                                        + "    [--subvector <n>] [--rerank <n>] [--covariance class|pooled] [--shrinkage none|loading|lw]\n"
+                                        + "    [--mini-batch <size>] [--mini-batch-iterations <n>] [--mini-batch-tolerance <dislocation>]\n"
+                                        + "    [--distance-cache <maximum cached distances>] [--reduce cnn|enn|enn-cnn]\n"
+                                        + "    [--threads <n>]";
+
+    private final Map<String, String> options;
+
+    private double[][] F; // built on demand when the dataset comes from a columnar file
+    private ColumnarDataSetFile columnarDataSetFile;
+    private String[] ClassNames;
+    private int[] SampleCount, ClassLabels;
+    private int FeatureCount;
+    private Map<String, double[][]> probesGroupedByClass;
+    private Set<Integer> selectedFeatures;
+    private long seed;
+    private DataSet dataSet;
+    private FoldSource groupedProbesSplittedPerTrainingAndTestSet;
+    private PairwiseDistanceCache pairwiseDistanceCache;
+    private final List<Double> achievedRecalls = Collections.synchronizedList( new ArrayList<>() );
+    private final List<Double> skippedWorkFractions = Collections.synchronizedList( new ArrayList<>() );
+    private PrototypeReduction prototypeReduction;
+    private final List<Double> keptPrototypeFractions = Collections.synchronizedList( new ArrayList<>() );
+    private final List<Double> miniBatchErrorGaps = Collections.synchronizedList( new ArrayList<>() );
+    private volatile QuantizedIndex lastQuantizedIndex;
+
+    public BatchRunner( Map<String, String> options ) {
+        this.options = options;
+    }
+
+    public static void main( String args[] ) {
+        Map<String, String> options = parseOptions( args );
+        if ( options == null || !options.containsKey( "data" ) ) {
+            System.err.println( USAGE );
+            System.exit( 1 );
+        }
+        try {
+            new BatchRunner( options ).run();
+        } catch ( IOException | IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+        }
+    }
+
+    public double run() throws IOException {
+        seed = Long.parseLong( options.getOrDefault( "seed", String.valueOf( LocalDateTime.now().getNano() ) ) );
+        System.out.println( "seed: " + seed );
+        long start = System.nanoTime();
+        loadDataSet( new File( options.get( "data" ) ) );
+        printTiming( "load", start );
+        System.out.println( "samples: " + ClassLabels.length + ", features: " + FeatureCount + ", classes: " + String.join( ", ", ClassNames ) );
+        if ( options.containsKey( "convert" ) ) {
+            start = System.nanoTime();
+            ColumnarDataSetFile.write( new File( options.get( "convert" ) ), ClassNames, SampleCount, ClassLabels, getFeatureMatrix() );
+            printTiming( "convert", start );
+        }
+
+        start = System.nanoTime();
+        selectFeatures();
+        printTiming( "feature selection", start );
+        System.out.println( "selected features: " + selectedFeatures );
+
+        start = System.nanoTime();
+        splitProbes();
+        printTiming( "validation split", start );
+
+        if ( options.containsKey( "distance-cache" ) ) {
+            start = System.nanoTime();
+            long maximumCachedDistances = Long.parseLong( options.get( "distance-cache" ) );
+            pairwiseDistanceCache = new PairwiseDistanceCache( dataSet, dataSet.resolveAttributes( selectedFeatures ), maximumCachedDistances );
+            printTiming( "distance cache" + ( pairwiseDistanceCache.isDense() ? "" : " (blocked)" ), start );
+        }
+
+        prototypeReduction = createPrototypeReduction();
+        if ( options.containsKey( "k-sweep" ) ) {
+            return sweepK( Integer.parseInt( options.get( "k-sweep" ) ) );
+        }
+
+        start = System.nanoTime();
+        double[] successRates = evaluateFolds();
+        double successRate = FoldEvaluator.meanSuccessRate( successRates );
+        printTiming( "classification", start );
+        System.out.println( "accuracy: " + MatrixUtilities.round( successRate ) + "%" );
+        printMeanPercentage( "achieved recall", achievedRecalls );
+        printMeanPercentage( "skipped distance work", skippedWorkFractions );
+        printMeanPercentage( "mini-batch k-means error over full batch", miniBatchErrorGaps );
+        printQuantizedStoreSize();
+        if ( prototypeReduction != null ) {
+            printReductionEffect( successRate );
+        }
+        return successRate;
+    }
+
+    private void loadDataSet( File dataSetFile ) throws IOException {
+        if ( dataSetFile.getName().endsWith( "." + ColumnarDataSetFile.EXTENSION ) ) {
+            columnarDataSetFile = ColumnarDataSetFile.open( dataSetFile );
+            ClassNames = columnarDataSetFile.getClassNames();
+            SampleCount = columnarDataSetFile.getSampleCount();
+            ClassLabels = columnarDataSetFile.getClassLabels();
+            FeatureCount = columnarDataSetFile.getFeatureCount();
+            dataSet = new DataSet( columnarDataSetFile );
+        } else {
+            DataSetReader dataSetReader = new DataSetReader();
+            dataSetReader.readDataSet( dataSetFile );
+            F = dataSetReader.getFeatureMatrix();
+            ClassNames = dataSetReader.getClassNames();
+            SampleCount = dataSetReader.getSampleCount();
+            ClassLabels = dataSetReader.getClassLabels();
+            FeatureCount = dataSetReader.getFeatureCount();
+            dataSet = new DataSet( F, ClassLabels, ClassNames );
+        }
+    }
+
+    /**
+     * Feature matrix (rows - features, columns - samples); only feature selection and conversion need it, so a
+     * columnar dataset is copied out of its mapped columns on first use.
+     */
+    private double[][] getFeatureMatrix() {
+        if ( F == null ) {
+            F = columnarDataSetFile.getFeatureMatrix();
+        }
+        return F;
+    }
+
+    private Map<String, double[][]> getProbesGroupedByClass() {
+        if ( probesGroupedByClass == null ) {
+            probesGroupedByClass = new ProbePerClassSeparator().separateProbesPerClass( ClassNames, FeatureCount, SampleCount, getFeatureMatrix() );
+        }
+        return probesGroupedByClass;
+    }
+
+    private void selectFeatures() {
+        int numberOfExpectedDimensions = Integer.parseInt( options.getOrDefault( "features", "1" ) );
+        FeatureSelector featureSelector = new FeatureSelector();
+        switch ( options.getOrDefault( "selection", "none" ) ) {
+            case "none":
+                selectedFeatures = allFeatures();
+                break;
+            case "fisher":
+                if ( numberOfExpectedDimensions == 1 ) {
+                    selectedFeatures = Collections.singleton( selectBestFeatureUsingFisherScores( featureSelector ) );
+                } else {
+                    selectedFeatures = featureSelector.getBestAttribtesUsingFisher( getProbesGroupedByClass(), numberOfExpectedDimensions );
+                }
+                break;
+            case "sfs":
+                selectedFeatures = featureSelector.selectBestFeatureIndexesUsingSFS( getProbesGroupedByClass(), numberOfExpectedDimensions, ClassLabels, SampleCount );
+                break;
+            case "pca":
+                double energy = Double.parseDouble( options.getOrDefault( "energy", "80" ) ) / 100.0;
+                F = new PCAFeatureExtractor().extractFeaturesUsingPCA( getFeatureMatrix(), energy );
+                FeatureCount = F.length;
+                dataSet = new DataSet( F, ClassLabels, ClassNames );
+                selectedFeatures = allFeatures();
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown feature selection: " + options.get( "selection" ) );
+        }
+    }
+
+    /**
+     * Attribute with the highest Fisher score over the whole dataset.
+     */
+    private int selectBestFeatureUsingFisherScores( FeatureSelector featureSelector ) {
+        FoldView wholeDataSet = new FoldView( dataSet, IntStream.range( 0, dataSet.getSampleCount() ).toArray(), new int[0] );
+        double[] fisherScores = featureSelector.getFisherScores( wholeDataSet, dataSet.resolveAttributes( null ) );
+        int bestFeatureIndex = 0;
+        for ( int attributeIndex = 1; attributeIndex < fisherScores.length; attributeIndex++ ) {
+            if ( fisherScores[attributeIndex] > fisherScores[bestFeatureIndex] ) {
+                bestFeatureIndex = attributeIndex;
+            }
+        }
+        return bestFeatureIndex;
+    }
+
+    private void splitProbes() {
+        int setsCount = Integer.parseInt( options.getOrDefault( "sets", "10" ) );
+        switch ( options.getOrDefault( "validation", "simple" ) ) {
+            case "simple":
+                double percentageDistribution = Double.parseDouble( options.getOrDefault( "training-part", "80" ) ) / 100.0;
+                groupedProbesSplittedPerTrainingAndTestSet = simpleValidationProbeSplitter( dataSet, percentageDistribution, seed );
+                break;
+            case "cross":
+                groupedProbesSplittedPerTrainingAndTestSet = crossValidationProbeSplitter( dataSet, setsCount, seed );
+                break;
+            case "bootstrap":
+                groupedProbesSplittedPerTrainingAndTestSet = bootstrapValidationProbeSplitter( dataSet, setsCount, seed );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown validation method: " + options.get( "validation" ) );
+        }
+    }
+
+    private double[] evaluateFolds() {
+        FoldEvaluator foldEvaluator = new FoldEvaluator( createClassifierFactory(), seed );
+        int threads = Integer.parseInt( options.getOrDefault( "threads", "1" ) );
+        if ( threads <= 1 ) {
+            return foldEvaluator.evaluate( groupedProbesSplittedPerTrainingAndTestSet, selectedFeatures );
+        }
+        ForkJoinPool pool = new ForkJoinPool( threads );
+        try {
+            return foldEvaluator.evaluate( groupedProbesSplittedPerTrainingAndTestSet, selectedFeatures, pool );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Scores k-NN for every k up to maximumK with a single neighbour search per fold, prints the mean accuracy curve
+     * and returns the accuracy of the best k.
+     */
+    private double sweepK( int maximumK ) {
+        if ( maximumK < 1 ) {
+            throw new IllegalArgumentException( "k sweep needs a maximum k of at least 1" );
+        }
+        long start = System.nanoTime();
+        double[] successRatesPerK = new double[maximumK];
+        int foldIndex = 0;
+        for ( FoldView fold : groupedProbesSplittedPerTrainingAndTestSet ) {
+            KNNClassifier kNNClassifier = new KNNClassifier( createNeighbourIndexFactory( seed + foldIndex++ ) );
+            kNNClassifier.setPairwiseDistanceCache( pairwiseDistanceCache );
+            double[] foldSuccessRatesPerK = kNNClassifier.trainForEachK( reduceTrainingSet( fold, selectedFeatures ), selectedFeatures, maximumK );
+            recordSearchStatistics( kNNClassifier );
+            for ( int kIndex = 0; kIndex < maximumK; kIndex++ ) {
+                successRatesPerK[kIndex] += foldSuccessRatesPerK[kIndex] / groupedProbesSplittedPerTrainingAndTestSet.size();
+            }
+        }
+        printTiming( "k sweep", start );
+        int bestK = 1;
+        for ( int k = 1; k <= maximumK; k++ ) {
+            System.out.println( "k = " + k + " accuracy: " + MatrixUtilities.round( successRatesPerK[k - 1] ) + "%" );
+            if ( successRatesPerK[k - 1] > successRatesPerK[bestK - 1] ) {
+                bestK = k;
+            }
+        }
+        System.out.println( "best k: " + bestK );
+        printMeanPercentage( "skipped distance work", skippedWorkFractions );
+        printMeanPercentage( "prototypes kept", keptPrototypeFractions );
+        return successRatesPerK[bestK - 1];
+    }
+
+    private FoldEvaluator.ClassifierFactory createClassifierFactory() {
+        String classifier = options.getOrDefault( "classifier", "nn" );
+        switch ( classifier ) {
+            case "nn":
+            case "knn":
+                int k = classifier.equals( "knn" ) ? Integer.parseInt( options.getOrDefault( "k", "1" ) ) : 1;
+                int recallSampleSize = Integer.parseInt( options.getOrDefault( "recall-sample", "0" ) );
+                createNeighbourIndexFactory( seed ); // rejects an unknown --search before any fold is evaluated
+                return seed -> ( fold, indexesOfBestAttributes ) -> {
+                    KNNClassifier kNNClassifier = new KNNClassifier( createNeighbourIndexFactory( seed ), recallSampleSize );
+                    kNNClassifier.setPairwiseDistanceCache( pairwiseDistanceCache );
+                    double successRate = kNNClassifier.train( reduceTrainingSet( fold, indexesOfBestAttributes ), indexesOfBestAttributes, k );
+                    recordSearchStatistics( kNNClassifier );
+                    return successRate;
+                };
+            case "nm":
+                boolean pooledCovariance = isPooledCovariance();
+                CovarianceShrinkage covarianceShrinkage = createCovarianceShrinkage( "none" );
+                return seed -> new NMClassifier( pooledCovariance, covarianceShrinkage );
+            case "knm":
+                CovarianceShrinkage clusterCovarianceShrinkage = createCovarianceShrinkage( "lw" );
+                if ( clusterCovarianceShrinkage == CovarianceShrinkage.NONE ) {
+                    throw new IllegalArgumentException( "k-NM cluster covariances are always regularized, use --shrinkage loading or lw" );
+                }
+                int miniBatchSize = Integer.parseInt( options.getOrDefault( "mini-batch", "0" ) );
+                int maximumMiniBatchIterations = Integer.parseInt( options.getOrDefault( "mini-batch-iterations", "100" ) );
+                double maximumMiniBatchCentroidDislocation = Double.parseDouble( options.getOrDefault( "mini-batch-tolerance", "1e-4" ) );
+                return seed -> ( fold, indexesOfBestAttributes ) -> {
+                    KNMClassifier kNMClassifier = new KNMClassifier( seed, clusterCovarianceShrinkage );
+                    kNMClassifier.useMiniBatchKMeans( miniBatchSize, maximumMiniBatchIterations, maximumMiniBatchCentroidDislocation );
+                    double successRate = kNMClassifier.train( fold, indexesOfBestAttributes );
+                    if ( !Double.isNaN( kNMClassifier.getMiniBatchErrorGap() ) ) {
+                        miniBatchErrorGaps.add( kNMClassifier.getMiniBatchErrorGap() );
+                    }
+                    return successRate;
+                };
+            default:
+                throw new IllegalArgumentException( "Unknown classifier: " + options.get( "classifier" ) );
+        }
+    }
+
+    /**
+     * @param seed seed of the fold, used by the randomized forest
+     */
+    private NeighbourIndexFactory createNeighbourIndexFactory( long seed ) {
+        // cached distances are only looked up by the scan
+        switch ( options.getOrDefault( "search", options.containsKey( "distance-cache" ) ? "brute" : "auto" ) ) {
+            case "auto":
+                return NeighbourSearchMethod.AUTO;
+            case "brute":
+                return NeighbourSearchMethod.BRUTE_FORCE;
+            case "partial":
+                return NeighbourSearchMethod.PARTIAL_DISTANCE;
+            case "kd":
+                return NeighbourSearchMethod.KD_TREE;
+            case "ball":
+                return NeighbourSearchMethod.BALL_TREE;
+            case "blocked":
+                return NeighbourSearchMethod.BLOCKED;
+            case "forest":
+                int treeCount = Integer.parseInt( options.getOrDefault( "trees", "8" ) );
+                int leafSize = Integer.parseInt( options.getOrDefault( "leaf-size", "32" ) );
+                return RandomProjectionForest.factory( treeCount, leafSize, seed );
+            case "sq":
+                NeighbourIndexFactory scalarQuantizedIndexFactory = ScalarQuantizedIndex.factory( Integer.parseInt( options.getOrDefault( "rerank", "0" ) ) );
+                return ( points, dimension ) -> lastQuantizedIndex = (QuantizedIndex) scalarQuantizedIndexFactory.createIndex( points, dimension );
+            case "pq":
+                int subvectorLength = Integer.parseInt( options.getOrDefault( "subvector", "4" ) );
+                NeighbourIndexFactory productQuantizedIndexFactory = ProductQuantizedIndex.factory( subvectorLength, Integer.parseInt( options.getOrDefault( "rerank", "0" ) ), seed );
+                return ( points, dimension ) -> lastQuantizedIndex = (QuantizedIndex) productQuantizedIndexFactory.createIndex( points, dimension );
+            default:
+                throw new IllegalArgumentException( "Unknown neighbour search: " + options.get( "search" ) );
+        }
+    }
+
+    private boolean isPooledCovariance() {
+        switch ( options.getOrDefault( "covariance", "class" ) ) {
+            case "class":
+                return false;
+            case "pooled":
+                return true;
+            default:
+                throw new IllegalArgumentException( "Unknown covariance: " + options.get( "covariance" ) );
+        }
+    }
+
+    private CovarianceShrinkage createCovarianceShrinkage( String defaultShrinkage ) {
+        switch ( options.getOrDefault( "shrinkage", defaultShrinkage ) ) {
+            case "none":
+                return CovarianceShrinkage.NONE;
+            case "loading":
+                return CovarianceShrinkage.DIAGONAL_LOADING;
+            case "lw":
+                return CovarianceShrinkage.LEDOIT_WOLF;
+            default:
+                throw new IllegalArgumentException( "Unknown shrinkage: " + options.get( "shrinkage" ) );
+        }
+    }
+
+    private PrototypeReduction createPrototypeReduction() {
+        if ( !options.containsKey( "reduce" ) ) {
+            return null;
+        }
+        String classifier = options.getOrDefault( "classifier", "nn" );
+        if ( !classifier.equals( "nn" ) && !classifier.equals( "knn" ) ) {
+            throw new IllegalArgumentException( "Prototype reduction applies to nn and knn only" );
+        }
+        switch ( options.get( "reduce" ) ) {
+            case "cnn":
+                return PrototypeReduction.CONDENSED;
+            case "enn":
+                return PrototypeReduction.EDITED;
+            case "enn-cnn":
+                return PrototypeReduction.EDITED_CONDENSED;
+            default:
+                throw new IllegalArgumentException( "Unknown prototype reduction: " + options.get( "reduce" ) );
+        }
+    }
+
+    private FoldView reduceTrainingSet( FoldView fold, Set<Integer> indexesOfBestAttributes ) {
+        if ( prototypeReduction == null ) {
+            return fold;
+        }
+        FoldView reducedFold = prototypeReduction.reduce( fold, indexesOfBestAttributes );
+        if ( fold.getTrainingIndexes().length > 0 ) {
+            keptPrototypeFractions.add( (double) reducedFold.getTrainingIndexes().length / fold.getTrainingIndexes().length );
+        }
+        return reducedFold;
+    }
+
+    /**
+     * Evaluates the same folds again on the whole training sets and prints the compression and the accuracy change.
+     */
+    private void printReductionEffect( double reducedSuccessRate ) {
+        printMeanPercentage( "prototypes kept", keptPrototypeFractions );
+        double keptFraction = 0.0;
+        for ( double fraction : keptPrototypeFractions ) {
+            keptFraction += fraction / keptPrototypeFractions.size();
+        }
+        System.out.println( "compression ratio: " + MatrixUtilities.round( 1.0 / keptFraction ) );
+        PrototypeReduction appliedReduction = prototypeReduction;
+        prototypeReduction = null;
+        long start = System.nanoTime();
+        double successRate = FoldEvaluator.meanSuccessRate( evaluateFolds() );
+        printTiming( "classification without reduction", start );
+        prototypeReduction = appliedReduction;
+        System.out.println( "accuracy without reduction: " + MatrixUtilities.round( successRate ) + "%, change: " + MatrixUtilities.round( reducedSuccessRate - successRate ) );
+    }
+
+    /**
+     * Code size of a quantized index against the eight bytes per selected attribute of a plain double row.
+     */
+    private void printQuantizedStoreSize() {
+        QuantizedIndex quantizedIndex = lastQuantizedIndex;
+        if ( quantizedIndex != null ) {
+            int plainBytesPerPoint = 8 * dataSet.resolveAttributes( selectedFeatures ).length;
+            System.out.println( "quantized store: " + quantizedIndex.getBytesPerPoint() + " bytes per probe instead of " + plainBytesPerPoint
+                                + " (" + MatrixUtilities.round( (double) plainBytesPerPoint / quantizedIndex.getBytesPerPoint() ) + "x smaller)"
+                                + ( quantizedIndex.isKeepingPoints() ? ", plus the plain probes kept for re-ranking" : "" ) );
+        }
+    }
+
+    private void recordSearchStatistics( KNNClassifier kNNClassifier ) {
+        if ( !Double.isNaN( kNNClassifier.getAchievedRecall() ) ) {
+            achievedRecalls.add( kNNClassifier.getAchievedRecall() );
+        }
+        if ( !Double.isNaN( kNNClassifier.getSkippedWorkFraction() ) ) {
+            skippedWorkFractions.add( kNNClassifier.getSkippedWorkFraction() );
+        }
+    }
+
+    /**
+     * Prints the mean of per-fold fractions as a percentage; nothing when no fold reported one.
+     */
+    private void printMeanPercentage( String label, List<Double> fractions ) {
+        if ( !fractions.isEmpty() ) {
+            double fractionSum = 0.0;
+            for ( double fraction : fractions ) {
+                fractionSum += fraction;
+            }
+            System.out.println( label + ": " + MatrixUtilities.round( 100 * fractionSum / fractions.size() ) + "%" );
+        }
+    }
+
+    private Set<Integer> allFeatures() {
+        return IntStream.range( 0, FeatureCount ).boxed().collect( Collectors.toSet() );
+    }
+
+    private void printTiming( String stage, long start ) {
+        System.out.println( stage + ": " + MatrixUtilities.round( ( System.nanoTime() - start ) / 1e6 ) + " ms" );
+    }
+
+    private static Map<String, String> parseOptions( String args[] ) {
+        Map<String, String> options = new HashMap<>();
+        for ( int index = 0; index < args.length; index += 2 ) {
+            if ( !args[index].startsWith( "--" ) || index + 1 == args.length ) {
+                return null;
+            }
+            options.put( args[index].substring( 2 ), args[index + 1] );
+        }
+        for ( String kOption : new String[]{ "k", "k-sweep" } ) {
+            if ( options.containsKey( kOption ) && !isPositiveInteger( options.get( kOption ) ) ) {
+                System.err.println( "--" + kOption + " has to be a whole number of at least 1, got " + options.get( kOption ) );
+                return null;
+            }
+        }
+        return options;
+    }
+
+    private static boolean isPositiveInteger( String value ) {
+        try {
+            return Integer.parseInt( value ) >= 1;
+        } catch ( NumberFormatException e ) {
+            return false;
+        }
+    }
+
+}
@@ -1,16 +1,21 @@
 package main;
 
-import Jama.*;
 import classifier.*;
 import java.io.*;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import probesUtilities.ColumnarDataSetFile;
+import probesUtilities.DataSet;
+import probesUtilities.DataSetReader;
 import probesUtilities.FeatureSelector;
+import probesUtilities.FoldSource;
+import probesUtilities.MatrixUtilities;
+import probesUtilities.PCAFeatureExtractor;
 import probesUtilities.ProbePerClassSeparator;
 
 import static probesUtilities.ProbesPerTrainingAndTestSetSplitter.*;
@@ -35,12 +40,14 @@ public class PR_GUI extends javax.swing.JFrame {
 
     private int bestAttributeIndex = -1;
 
-    private String InData; // dataset from a text file will be placed here
+    private File dataSetFile; // dataset text file chosen by the user
     private int ClassCount = 0, FeatureCount = 0;
-    private double[][] F, FNew; // original feature matrix and transformed feature matrix
+    private double[][] F, FNew; // original feature matrix (built on demand for a columnar file) and transformed feature matrix
+    private ColumnarDataSetFile columnarDataSetFile;
     private int[] ClassLabels, SampleCount;
     private String[] ClassNames;
-    private List<Map<String, double[][]>> groupedProbesSplittedPerTrainingAndTestSet;
+    private DataSet dataSet;
+    private FoldSource groupedProbesSplittedPerTrainingAndTestSet;
     private Map<String, double[][]> probesGroupedByClass;
     private final ProbePerClassSeparator probePerClassSeparator;
     private Set<Integer> selectedFeatures = new HashSet<>();
@@ -105,6 +112,9 @@ public class PR_GUI extends javax.swing.JFrame {
         jLabel7 = new javax.swing.JLabel();
         jLabel11 = new javax.swing.JLabel();
         validationMethod = new javax.swing.JComboBox();
+        jLabel18 = new javax.swing.JLabel();
+        setsJSpinner = new javax.swing.JSpinner();
+        parallelJCheckBox = new javax.swing.JCheckBox();
         jPanel5 = new javax.swing.JPanel();
         jLabel2 = new javax.swing.JLabel();
         l_FLD_winner = new javax.swing.JLabel();
@@ -367,6 +377,21 @@ public class PR_GUI extends javax.swing.JFrame {
         jPanel4.add( validationMethod );
         validationMethod.setBounds( 70, 80, 160, 20 );
 
+        jLabel18.setHorizontalAlignment( javax.swing.SwingConstants.CENTER );
+        jLabel18.setLabelFor( setsJSpinner );
+        jLabel18.setText( "Sets:" );
+        jPanel4.add( jLabel18 );
+        jLabel18.setBounds( 234, 80, 36, 20 );
+
+        setsJSpinner.setModel( new javax.swing.SpinnerNumberModel( 10, 2, 100, 1 ) );
+        jPanel4.add( setsJSpinner );
+        setsJSpinner.setBounds( 270, 80, 50, 20 );
+
+        parallelJCheckBox.setBackground( new java.awt.Color( 204, 255, 204 ) );
+        parallelJCheckBox.setText( "Parallel folds" );
+        jPanel4.add( parallelJCheckBox );
+        parallelJCheckBox.setBounds( 230, 104, 120, 20 );
+
         getContentPane().add( jPanel4 );
         jPanel4.setBounds( 380, 150, 400, 210 );
 
@@ -406,20 +431,35 @@ public class PR_GUI extends javax.swing.JFrame {
     }
 
     private void b_readActionPerformed( java.awt.event.ActionEvent evt ) {
-        // reads in a text file; contents is placed into a variable of String type
-        InData = readDataSet();
+        // chooses a text file; it is parsed in a single pass by "Parse dataset"
+        dataSetFile = readDataSet();
     }
 
     private void jButton2ActionPerformed( java.awt.event.ActionEvent evt ) {
         // Analyze text inputted from a file: determine class number and labels and number
         // of features; build feature matrix: columns - samples, rows - features
         try {
-            if ( InData != null ) {
-                getDatasetParameters();
+            if ( dataSetFile != null ) {
+                probesGroupedByClass = null;
+                if ( dataSetFile.getName().endsWith( "." + ColumnarDataSetFile.EXTENSION ) ) {
+                    columnarDataSetFile = ColumnarDataSetFile.open( dataSetFile );
+                    F = null;
+                    ClassNames = columnarDataSetFile.getClassNames();
+                    SampleCount = columnarDataSetFile.getSampleCount();
+                    ClassLabels = columnarDataSetFile.getClassLabels();
+                    FeatureCount = columnarDataSetFile.getFeatureCount();
+                    dataSet = new DataSet( columnarDataSetFile );
+                } else {
+                    DataSetReader dataSetReader = new DataSetReader();
+                    dataSetReader.readDataSet( dataSetFile );
+                    F = dataSetReader.getFeatureMatrix();
+                    ClassNames = dataSetReader.getClassNames();
+                    SampleCount = dataSetReader.getSampleCount();
+                    ClassLabels = dataSetReader.getClassLabels();
+                    FeatureCount = dataSetReader.getFeatureCount();
+                    dataSet = new DataSet( F, ClassLabels, ClassNames );
+                }
                 l_nfeatures.setText( FeatureCount + "" );
-                fillFeatureMatrix();
-                probePerClassSeparator.separateProbesPerClass( ClassNames, FeatureCount, SampleCount, F );
-                probesGroupedByClass = probePerClassSeparator.probesGroupedByClass;
             }
         } catch ( Exception ex ) {
             JOptionPane.showMessageDialog( this, ex.getMessage() );
@@ -428,9 +468,10 @@ public class PR_GUI extends javax.swing.JFrame {
     }
 
     private void findBestAttributes( java.awt.event.ActionEvent evt ) {
-        if ( F == null ) {
+        if ( dataSet == null ) {
             return;
         }
+        double[][] featureMatrix = getFeatureMatrix();
         selectedFeatures.clear();
         if ( f_rb_sel.isSelected() ) {
             int numberOfExpectedDimensions = Integer.parseInt( (String) selbox_nfeat.getSelectedItem() );
@@ -440,7 +481,7 @@ public class PR_GUI extends javax.swing.JFrame {
                         double FLD = 0, tmp;
                         int bestFeatureIndex = -1;
                         for ( int i = 0; i < FeatureCount; i++ ) {
-                            if ( ( tmp = computeFisherLD( F[i] ) ) > FLD ) {
+                            if ( ( tmp = computeFisherLD( featureMatrix[i] ) ) > FLD ) {
                                 FLD = tmp;
                                 bestFeatureIndex = i;
                             }
@@ -450,14 +491,14 @@ public class PR_GUI extends javax.swing.JFrame {
 
                         selectedFeatures.add( bestFeatureIndex );
                     } else {
-                        selectedFeatures = new FeatureSelector().getBestAttribtesUsingFisher( probesGroupedByClass, numberOfExpectedDimensions ) ;
+                        selectedFeatures = new FeatureSelector().getBestAttribtesUsingFisher( getProbesGroupedByClass(), numberOfExpectedDimensions ) ;
 
                         l_FLD_winner.setText( convertSetOfIntegersToString( selectedFeatures ) );
                     }
                     break;
                 case "SFS":
                     FeatureSelector sFSFeatureSelector = new FeatureSelector();
-                    selectedFeatures = sFSFeatureSelector.selectBestFeatureIndexesUsingSFS(probesGroupedByClass, numberOfExpectedDimensions, ClassLabels, SampleCount );
+                    selectedFeatures = sFSFeatureSelector.selectBestFeatureIndexesUsingSFS( getProbesGroupedByClass(), numberOfExpectedDimensions, ClassLabels, SampleCount );
                     l_FLD_winner.setText( convertSetOfIntegersToString( selectedFeatures ) );
                     break;
                 default:
@@ -466,11 +507,7 @@ public class PR_GUI extends javax.swing.JFrame {
 
         } else if ( f_rb_ext.isSelected() ) {
             double TotEnergy = Double.parseDouble( tf_PCA_Energy.getText() ) / 100.0;
-            int k = 0;
-            double[][] FFNorm = centerAroundMean( F );
-            Matrix Cov = computeCovarianceMatrix( FFNorm );
-            Matrix TransformMat = extractFeatures( Cov, TotEnergy, k );
-            FNew = projectSamples( new Matrix( FFNorm ), TransformMat );
+            FNew = new PCAFeatureExtractor().extractFeaturesUsingPCA( featureMatrix, TotEnergy );
             l_NewDim.setText( FNew.length + "" );
         }
     }
@@ -484,13 +521,13 @@ public class PR_GUI extends javax.swing.JFrame {
 //        printProbes(groupedProbesSplittedPerTrainingAndTestSet);
         switch ( validationMethod.getSelectedIndex() ) {
             case 0:
-                groupedProbesSplittedPerTrainingAndTestSet = simpleValidationProbeSplitter( probesGroupedByClass, percentageDistribution );
+                groupedProbesSplittedPerTrainingAndTestSet = simpleValidationProbeSplitter( dataSet, percentageDistribution, LocalDateTime.now().getNano() );
                 break;
             case 1:
-                groupedProbesSplittedPerTrainingAndTestSet = crossValidationProbeSplitter( F, 10, ClassNames, SampleCount );
+                groupedProbesSplittedPerTrainingAndTestSet = crossValidationProbeSplitter( dataSet, (int) setsJSpinner.getValue(), LocalDateTime.now().getNano() );
                 break;
             case 2:
-                groupedProbesSplittedPerTrainingAndTestSet = bootstrapValidationProbeSplitter( F, 10, ClassNames, SampleCount );
+                groupedProbesSplittedPerTrainingAndTestSet = bootstrapValidationProbeSplitter( dataSet, (int) setsJSpinner.getValue(), LocalDateTime.now().getNano() );
                 break;
             default:
                 break;
@@ -499,60 +536,35 @@ public class PR_GUI extends javax.swing.JFrame {
     }
 
     private void executePerformed( java.awt.event.ActionEvent evt ) {
-        IClassifier classifier;
-        double successRate = 0.0;
-        switch ( validationMethod.getSelectedIndex() ) {
-            case 0:
-                successRate += validateClassifier( groupedProbesSplittedPerTrainingAndTestSet.get( 0 ) );
-                break;
-            case 1:
-                for ( Map<String, double[][]> groupedProbes : groupedProbesSplittedPerTrainingAndTestSet ) {
-                    successRate += validateClassifier( groupedProbes );
-                }
-                successRate = successRate / groupedProbesSplittedPerTrainingAndTestSet.size();
-                break;
-            case 2:
-                for ( Map<String, double[][]> groupedProbes : groupedProbesSplittedPerTrainingAndTestSet ) {
-                    successRate += validateClassifier( groupedProbes );
-                }
-                successRate = successRate / groupedProbesSplittedPerTrainingAndTestSet.size();
-                break;
-            default:
-                break;
+        FoldEvaluator foldEvaluator = new FoldEvaluator( createClassifierFactory(), LocalDateTime.now().getNano() );
+        double[] successRates;
+        if ( parallelJCheckBox.isSelected() ) {
+            successRates = foldEvaluator.evaluate( groupedProbesSplittedPerTrainingAndTestSet, selectedFeatures, ForkJoinPool.commonPool() );
+        } else {
+            successRates = foldEvaluator.evaluate( groupedProbesSplittedPerTrainingAndTestSet, selectedFeatures );
+        }
+        for ( double successRateInTry : successRates ) {
+            System.out.println( "success rate in try " + successRateInTry );
         }
+        double successRate = FoldEvaluator.meanSuccessRate( successRates );
 
         System.out.println( "Success rate " + successRate );
-        jLabelSuccessRate.setText( SUCCESS_RATE + round( successRate ) + "%" );
+        jLabelSuccessRate.setText( SUCCESS_RATE + MatrixUtilities.round( successRate ) + "%" );
 
     }
 
-    private double validateClassifier( Map<String, double[][]> probes ) {
-        double successRate = 0.0;
-        IClassifier classifier;
-//        printProbes( probes );
+    private FoldEvaluator.ClassifierFactory createClassifierFactory() {
         switch ( jComboBox2.getSelectedIndex() ) {
             case 0:
-                classifier = new NNClassifier();
-                successRate = classifier.train( probes, selectedFeatures );
-                break;
+                return seed -> new NNClassifier();
             case 1:
-                classifier = new NMClassifier();
-                successRate = classifier.train( probes, selectedFeatures );
-                break;
+                return seed -> new NMClassifier();
             case 2:
                 int k = (int) kJSpinner.getValue();
-                IKClassifier kClassifier = new KNNClassifier();
-                successRate = kClassifier.train( probes, selectedFeatures, k );
-                break;
-            case 3:
-                KNMClassifier knmClassifier = new KNMClassifier();
-                successRate = knmClassifier.train( probes, selectedFeatures );
-                break;
+                return seed -> ( fold, indexesOfBestAttributes ) -> new KNNClassifier().train( fold, indexesOfBestAttributes, k );
             default:
-                break;
+                return seed -> new KNMClassifier( seed );
         }
-        System.out.println( "success rate in try " + successRate );
-        return successRate;
     }
 
     private double getPercentageDistributionBetweenTestAndTrainSets() throws NumberFormatException {
@@ -610,6 +622,7 @@ public class PR_GUI extends javax.swing.JFrame {
     private javax.swing.JLabel jLabel15;
     private javax.swing.JLabel jLabel16;
     private javax.swing.JLabel jLabel17;
+    private javax.swing.JLabel jLabel18;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
@@ -625,6 +638,8 @@ public class PR_GUI extends javax.swing.JFrame {
     private javax.swing.JPanel jPanel5;
     private javax.swing.JSeparator jSeparator1;
     private javax.swing.JSpinner kJSpinner;
+    private javax.swing.JCheckBox parallelJCheckBox;
+    private javax.swing.JSpinner setsJSpinner;
     private javax.swing.JLabel l_FLD_val;
     private javax.swing.JLabel l_FLD_winner;
     private javax.swing.JLabel l_NewDim;
@@ -638,107 +653,18 @@ public class PR_GUI extends javax.swing.JFrame {
     private javax.swing.JComboBox validationMethod;
     // End of variables declaration                   
 
-    private String readDataSet() {
+    private File readDataSet() {
 
-        String s_tmp, s_out = "";
         JFileChooser jfc = new JFileChooser();
         jfc.setCurrentDirectory( new File( ".." ) );
         FileNameExtensionFilter filter = new FileNameExtensionFilter(
-                "Datasets - plain text files", "txt" );
+                "Datasets - plain text or columnar binary files", "txt", ColumnarDataSetFile.EXTENSION );
         jfc.setFileFilter( filter );
         if ( jfc.showOpenDialog( this ) == JFileChooser.APPROVE_OPTION ) {
-            try {
-                BufferedReader br = new BufferedReader( new FileReader( jfc.getSelectedFile() ) );
-                while ( ( s_tmp = br.readLine() ) != null ) {
-                    s_out += s_tmp + '$';
-                }
-                br.close();
-                l_dataset_name.setText( jfc.getSelectedFile().getName() );
-            } catch ( Exception e ) {
-            }
-        }
-        return s_out;
-    }
-
-    private void getDatasetParameters() throws Exception {
-        // based on data stored in InData determine: class count and names, number of samples 
-        // and number of features; set the corresponding variables
-        String stmp = InData, saux = "";
-        // analyze the first line and get feature count: assume that number of features
-        // equals number of commas
-        saux = InData.substring( InData.indexOf( ',' ) + 1, InData.indexOf( '$' ) );
-        if ( saux.length() == 0 ) {
-            throw new Exception( "The first line is empty" );
-        }
-        // saux stores the first line beginning from the first comma
-        int count = 0;
-        while ( saux.indexOf( ',' ) > 0 ) {
-            saux = saux.substring( saux.indexOf( ',' ) + 1 );
-            count++;
-        }
-        FeatureCount = count + 1; // the first parameter
-        // Determine number of classes, class names and number of samples per class
-        boolean New;
-        int index = -1;
-        List<String> NameList = new ArrayList<String>();
-        List<Integer> CountList = new ArrayList<Integer>();
-        List<Integer> LabelList = new ArrayList<Integer>();
-        while ( stmp.length() > 1 ) {
-            saux = stmp.substring( 0, stmp.indexOf( ' ' ) );
-            New = true;
-            index++; // new class index
-            for ( int i = 0; i < NameList.size(); i++ ) {
-                if ( saux.equals( NameList.get( i ) ) ) {
-                    New = false;
-                    index = i; // class index
-                }
-            }
-            if ( New ) {
-                NameList.add( saux );
-                CountList.add( 0 );
-            } else {
-                CountList.set( index, CountList.get( index ).intValue() + 1 );
-            }
-            LabelList.add( index ); // class index for current row
-            stmp = stmp.substring( stmp.indexOf( '$' ) + 1 );
-        }
-        // based on results of the above analysis, create variables        
-        ClassNames = new String[NameList.size()];
-        for ( int i = 0; i < ClassNames.length; i++ ) {
-            ClassNames[i] = NameList.get( i );
-        }
-        SampleCount = new int[CountList.size()];
-        for ( int i = 0; i < SampleCount.length; i++ ) {
-            SampleCount[i] = CountList.get( i ).intValue() + 1;
-        }
-        ClassLabels = new int[LabelList.size()];
-        for ( int i = 0; i < ClassLabels.length; i++ ) {
-            ClassLabels[i] = LabelList.get( i ).intValue();
-        }
-    }
-
-    private void fillFeatureMatrix() throws Exception {
-        // having determined array size and class labels, fills in the feature matrix
-        int n = 0;
-        String saux, stmp = InData;
-        for ( int i = 0; i < SampleCount.length; i++ ) {
-            n += SampleCount[i];
-        }
-        if ( n <= 0 ) {
-            throw new Exception( "no samples found" );
+            l_dataset_name.setText( jfc.getSelectedFile().getName() );
+            return jfc.getSelectedFile();
         }
-        F = new double[FeatureCount][n]; // samples are placed column-wise
-        for ( int j = 0; j < n; j++ ) {
-            saux = stmp.substring( 0, stmp.indexOf( '$' ) );
-            saux = saux.substring( stmp.indexOf( ',' ) + 1 );
-            for ( int i = 0; i < FeatureCount - 1; i++ ) {
-                F[i][j] = Double.parseDouble( saux.substring( 0, saux.indexOf( ',' ) ) );
-                saux = saux.substring( saux.indexOf( ',' ) + 1 );
-            }
-            F[FeatureCount - 1][j] = Double.parseDouble( saux );
-            stmp = stmp.substring( stmp.indexOf( '$' ) + 1 );
-        }
-        int cc = 1;
+        return dataSetFile;
     }
 
     private void selectFeatures( int[] flags, int d ) {
@@ -748,7 +674,7 @@ public class PR_GUI extends javax.swing.JFrame {
             double FLD = 0, tmp;
             int max_ind = -1;
             for ( int i = 0; i < FeatureCount; i++ ) {
-                if ( ( tmp = computeFisherLD( F[i] ) ) > FLD ) {
+                if ( ( tmp = computeFisherLD( getFeatureMatrix()[i] ) ) > FLD ) {
                     FLD = tmp;
                     max_ind = i;
                 }
@@ -760,6 +686,25 @@ public class PR_GUI extends javax.swing.JFrame {
         // to do: compute for higher dimensional spaces, use e.g. SFS for candidate selection
     }
 
+    /**
+     * Feature matrix (rows - features, columns - samples); a columnar dataset is copied out of its mapped columns only
+     * when feature selection first needs it.
+     */
+    private double[][] getFeatureMatrix() {
+        if ( F == null ) {
+            F = columnarDataSetFile.getFeatureMatrix();
+        }
+        return F;
+    }
+
+    private Map<String, double[][]> getProbesGroupedByClass() {
+        if ( probesGroupedByClass == null ) {
+            probePerClassSeparator.separateProbesPerClass( ClassNames, FeatureCount, SampleCount, getFeatureMatrix() );
+            probesGroupedByClass = probePerClassSeparator.probesGroupedByClass;
+        }
+        return probesGroupedByClass;
+    }
+
     private double computeFisherLD( double[] vec ) {
         // 1D, 2-classes
         double mA = 0, mB = 0, sA = 0, sB = 0;
@@ -779,83 +724,6 @@ public class PR_GUI extends javax.swing.JFrame {
         return Math.abs( mA - mB ) / ( Math.sqrt( sA ) + Math.sqrt( sB ) );
     }
 
-    private Matrix extractFeatures( Matrix C, double Ek, int k ) {
-
-        Matrix evecs, evals;
-        // compute eigenvalues and eigenvectors
-        evecs = C.eig().getV();
-        evals = C.eig().getD();
-
-        // PM: projection matrix that will hold a set dominant eigenvectors
-        Matrix PM;
-        if ( k > 0 ) {
-            // preset dimension of new feature space
-//            PM = new double[evecs.getRowDimension()][k];
-            PM = evecs.getMatrix( 0, evecs.getRowDimension() - 1,
-                                  evecs.getColumnDimension() - k, evecs.getColumnDimension() - 1 );
-        } else {
-            // dimension will be determined based on scatter energy
-            double TotEVal = evals.trace(); // total energy
-            double EAccum = 0;
-            int m = evals.getColumnDimension() - 1;
-            while ( EAccum < Ek * TotEVal ) {
-                EAccum += evals.get( m, m );
-                m--;
-            }
-            PM = evecs.getMatrix( 0, evecs.getRowDimension() - 1, m + 1, evecs.getColumnDimension() - 1 );
-        }
-
-        /*            System.out.println("Eigenvectors");                
-         for(int i=0; i<r; i++){
-         for(int j=0; j<c; j++){
-         System.out.print(evecs[i][j]+" ");
-         }
-         System.out.println();                
-         }
-         System.out.println("Eigenvalues");                
-         for(int i=0; i<r; i++){
-         for(int j=0; j<c; j++){
-         System.out.print(evals[i][j]+" ");
-         }
-         System.out.println();                
-         }
-         */
-        return PM;
-    }
-
-    private Matrix computeCovarianceMatrix( double[][] m ) {
-//        double[][] C = new double[M.length][M.length];
-
-        Matrix M = new Matrix( m );
-        Matrix MT = M.transpose();
-        Matrix C = M.times( MT );
-        return C;
-    }
-
-    private double[][] centerAroundMean( double[][] M ) {
-
-        double[] mean = new double[M.length];
-        for ( int i = 0; i < M.length; i++ ) {
-            for ( int j = 0; j < M[0].length; j++ ) {
-                mean[i] += M[i][j];
-            }
-        }
-        for ( int i = 0; i < M.length; i++ ) {
-            mean[i] /= M[0].length;
-        }
-        for ( int i = 0; i < M.length; i++ ) {
-            for ( int j = 0; j < M[0].length; j++ ) {
-                M[i][j] -= mean[i];
-            }
-        }
-        return M;
-    }
-
-    private double[][] projectSamples( Matrix FOld, Matrix TransformMat ) {
-
-        return ( FOld.transpose().times( TransformMat ) ).transpose().getArrayCopy();
-    }
-
     private String convertSetOfIntegersToString( Set<Integer> integers ) {
         StringBuilder sb = new StringBuilder( "" );
         integers.stream().forEach( ( integer ) -> {
@@ -863,16 +731,4 @@ public class PR_GUI extends javax.swing.JFrame {
         } );
         return sb.toString();
     }
-
-    public static double round( double value ) {
-        int places = 2;
-        if ( places < 0 ) {
-            throw new IllegalArgumentException();
-        }
-
-        long factor = (long) Math.pow( 10, places );
-        value = value * factor;
-        long tmp = Math.round( value );
-        return (double) tmp / factor;
-    }
 }
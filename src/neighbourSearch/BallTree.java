@@ -0,0 +1,88 @@
+package neighbourSearch;
+
+/**
+ * Ball tree for higher dimensional data, where splitting planes of a KD-tree rarely prune anything. Every node keeps
+ * the centroid of its points and the radius around it; a node is skipped when the query is farther from its ball than
+ * from the current k-th neighbour.
+ */
+public class BallTree extends SpatialTree {
+
+    /**
+     * Relative margin on the pruning bound, which goes through square roots and may round above the exact distance of
+     * a point lying on the ball surface.
+     */
+    private static final double BOUND_TOLERANCE = 1e-9;
+
+    private final double[] centroids;
+    private final double[] radiuses;
+
+    public BallTree( double[] points, int dimension ) {
+        super( points, dimension );
+        centroids = new double[nodeCount * dimension];
+        radiuses = new double[nodeCount];
+        for ( int node = 0; node < nodeCount; node++ ) {
+            describeBall( node );
+        }
+    }
+
+    @Override
+    public void search( double[] query, NeighbourHeap heap ) {
+        search( 0, distanceToCentroid( 0, query ), query, heap );
+    }
+
+    private void search( int node, double distanceToNode, double[] query, NeighbourHeap heap ) {
+        double gap = distanceToNode - radiuses[node] - BOUND_TOLERANCE * ( distanceToNode + radiuses[node] );
+        if ( gap > 0 && gap * gap > heap.worstDistance() ) {
+            return;
+        }
+        if ( isLeaf( node ) ) {
+            searchLeaf( node, query, heap );
+            return;
+        }
+        double distanceToLeft = distanceToCentroid( leftChild[node], query );
+        double distanceToRight = distanceToCentroid( rightChild[node], query );
+        if ( distanceToLeft <= distanceToRight ) {
+            search( leftChild[node], distanceToLeft, query, heap );
+            search( rightChild[node], distanceToRight, query, heap );
+        } else {
+            search( rightChild[node], distanceToRight, query, heap );
+            search( leftChild[node], distanceToLeft, query, heap );
+        }
+    }
+
+    private double distanceToCentroid( int node, double[] query ) {
+        int offset = node * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = query[attributeIndex] - centroids[offset + attributeIndex];
+            distance += difference * difference;
+        }
+        distanceEvaluations++;
+        return Math.sqrt( distance );
+    }
+
+    private void describeBall( int node ) {
+        int offset = node * dimension;
+        int start = nodeStart[node];
+        int end = nodeEnd[node];
+        for ( int treeIndex = start; treeIndex < end; treeIndex++ ) {
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                centroids[offset + attributeIndex] += treePoints[treeIndex * dimension + attributeIndex];
+            }
+        }
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            centroids[offset + attributeIndex] /= end - start;
+        }
+        double radius = 0.0;
+        for ( int treeIndex = start; treeIndex < end; treeIndex++ ) {
+            double distance = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                double difference = treePoints[treeIndex * dimension + attributeIndex] - centroids[offset + attributeIndex];
+                distance += difference * difference;
+            }
+            radius = Math.max( radius, distance );
+        }
+        radiuses[node] = Math.sqrt( radius );
+    }
+
+}
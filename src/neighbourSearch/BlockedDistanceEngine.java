@@ -0,0 +1,140 @@
+package neighbourSearch;
+
+/**
+ * Batch k-NN search over whole blocks of queries. Squared distances are expanded as ||a||^2 + ||b||^2 - 2 a.b, the
+ * norms are computed once, and the dot products of a tile of queries with a tile of training points small enough to
+ * stay in cache are computed together, so every training tile is loaded once per query tile instead of once per
+ * query. The nearest neighbours are then selected from each finished tile. All points are centred on the training
+ * mean first, which keeps the norms small and so the cancellation error of the expanded form low.
+ * <p>
+ * The expanded form rounds differently from summing squared differences, so distances that are equal in exact
+ * arithmetic may differ in the last bits and ties can be broken differently than by a scan.
+ */
+public class BlockedDistanceEngine {
+
+    private static final int TRAINING_TILE_BYTES = 1 << 17;
+    private static final int QUERY_TILE_SIZE = 32;
+
+    private final double[] trainingPoints;
+    private final double[] trainingMean;
+    private final int dimension;
+    private final int trainingCount;
+    private final double[] trainingNorms;
+    private final int trainingTileSize;
+    private final double[] tile;
+
+    public BlockedDistanceEngine( double[] trainingPoints, int dimension ) {
+        this.dimension = dimension;
+        trainingCount = trainingPoints.length / dimension;
+        trainingMean = new double[dimension];
+        for ( int index = 0; index < trainingPoints.length; index++ ) {
+            trainingMean[index % dimension] += trainingPoints[index] / trainingCount;
+        }
+        this.trainingPoints = centre( trainingPoints );
+        trainingNorms = squaredNorms( this.trainingPoints, dimension );
+        trainingTileSize = Math.max( 4, TRAINING_TILE_BYTES / ( 8 * dimension ) ) & ~3;
+        tile = new double[QUERY_TILE_SIZE * trainingTileSize];
+    }
+
+    /**
+     * Fills heaps[i] with the nearest training points of the query packed at queries[i * dimension]. The heaps are
+     * cleared first.
+     */
+    public void findNearestNeighbours( double[] queries, NeighbourHeap[] heaps ) {
+        queries = centre( queries );
+        int queryCount = queries.length / dimension;
+        double[] queryNorms = squaredNorms( queries, dimension );
+        for ( NeighbourHeap heap : heaps ) {
+            heap.clear();
+        }
+        for ( int queryStart = 0; queryStart < queryCount; queryStart += QUERY_TILE_SIZE ) {
+            int queryEnd = Math.min( queryCount, queryStart + QUERY_TILE_SIZE );
+            for ( int trainingStart = 0; trainingStart < trainingCount; trainingStart += trainingTileSize ) {
+                int trainingEnd = Math.min( trainingCount, trainingStart + trainingTileSize );
+                computeTile( queries, queryStart, queryEnd, trainingStart, trainingEnd );
+                selectFromTile( queryNorms, heaps, queryStart, queryEnd, trainingStart, trainingEnd );
+            }
+        }
+    }
+
+    /**
+     * Dot products of the query tile with the training tile, four training points per pass so that every query value
+     * loaded is used four times.
+     */
+    private void computeTile( double[] queries, int queryStart, int queryEnd, int trainingStart, int trainingEnd ) {
+        int tileWidth = trainingEnd - trainingStart;
+        for ( int query = queryStart; query < queryEnd; query++ ) {
+            int queryOffset = query * dimension;
+            int tileOffset = ( query - queryStart ) * tileWidth;
+            int training = trainingStart;
+            for ( ; training + 3 < trainingEnd; training += 4 ) {
+                int firstOffset = training * dimension;
+                int secondOffset = firstOffset + dimension;
+                int thirdOffset = secondOffset + dimension;
+                int fourthOffset = thirdOffset + dimension;
+                double first = 0.0;
+                double second = 0.0;
+                double third = 0.0;
+                double fourth = 0.0;
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    double value = queries[queryOffset + attributeIndex];
+                    first += value * trainingPoints[firstOffset + attributeIndex];
+                    second += value * trainingPoints[secondOffset + attributeIndex];
+                    third += value * trainingPoints[thirdOffset + attributeIndex];
+                    fourth += value * trainingPoints[fourthOffset + attributeIndex];
+                }
+                int position = tileOffset + training - trainingStart;
+                tile[position] = first;
+                tile[position + 1] = second;
+                tile[position + 2] = third;
+                tile[position + 3] = fourth;
+            }
+            for ( ; training < trainingEnd; training++ ) {
+                int trainingOffset = training * dimension;
+                double dotProduct = 0.0;
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    dotProduct += queries[queryOffset + attributeIndex] * trainingPoints[trainingOffset + attributeIndex];
+                }
+                tile[tileOffset + training - trainingStart] = dotProduct;
+            }
+        }
+    }
+
+    private void selectFromTile( double[] queryNorms, NeighbourHeap[] heaps, int queryStart, int queryEnd, int trainingStart, int trainingEnd ) {
+        int tileWidth = trainingEnd - trainingStart;
+        for ( int query = queryStart; query < queryEnd; query++ ) {
+            NeighbourHeap heap = heaps[query];
+            int tileOffset = ( query - queryStart ) * tileWidth;
+            double queryNorm = queryNorms[query];
+            for ( int training = trainingStart; training < trainingEnd; training++ ) {
+                // cancellation can leave a tiny negative value for (nearly) identical points
+                double distance = Math.max( 0.0, queryNorm + trainingNorms[training] - 2 * tile[tileOffset + training - trainingStart] );
+                if ( distance <= heap.worstDistance() ) {
+                    heap.offer( distance, training );
+                }
+            }
+        }
+    }
+
+    private double[] centre( double[] points ) {
+        double[] centredPoints = new double[points.length];
+        for ( int index = 0; index < points.length; index++ ) {
+            centredPoints[index] = points[index] - trainingMean[index % dimension];
+        }
+        return centredPoints;
+    }
+
+    private static double[] squaredNorms( double[] points, int dimension ) {
+        double[] norms = new double[points.length / dimension];
+        for ( int point = 0; point < norms.length; point++ ) {
+            double norm = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                double value = points[point * dimension + attributeIndex];
+                norm += value * value;
+            }
+            norms[point] = norm;
+        }
+        return norms;
+    }
+
+}
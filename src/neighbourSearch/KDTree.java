@@ -0,0 +1,33 @@
+package neighbourSearch;
+
+/**
+ * KD-tree for low dimensional data. Every inner node splits its points at the median of the widest dimension, the
+ * query descends into the nearer half first and visits the other one only when the splitting plane is closer than the
+ * current k-th neighbour.
+ */
+public class KDTree extends SpatialTree {
+
+    public KDTree( double[] points, int dimension ) {
+        super( points, dimension );
+    }
+
+    @Override
+    public void search( double[] query, NeighbourHeap heap ) {
+        search( 0, query, heap );
+    }
+
+    private void search( int node, double[] query, NeighbourHeap heap ) {
+        if ( isLeaf( node ) ) {
+            searchLeaf( node, query, heap );
+            return;
+        }
+        double distanceToPlane = query[splitDimension[node]] - splitValue[node];
+        int nearChild = distanceToPlane <= 0 ? leftChild[node] : rightChild[node];
+        int farChild = distanceToPlane <= 0 ? rightChild[node] : leftChild[node];
+        search( nearChild, query, heap );
+        if ( distanceToPlane * distanceToPlane <= heap.worstDistance() ) {
+            search( farChild, query, heap );
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package neighbourSearch;
+
+/**
+ * Bounded max-heap of the k nearest neighbours found so far, kept in primitive arrays. The root is the farthest kept
+ * neighbour, so a candidate is rejected with a single comparison. Neighbours are identified by their position in the
+ * training set of a fold; equal distances are ordered by position, so every exact search method keeps the same
+ * neighbours. Reusable between queries - nothing is allocated after construction.
+ */
+public class NeighbourHeap {
+
+    private final double[] distances;
+    private final int[] positions;
+    private int size;
+
+    public NeighbourHeap( int capacity ) {
+        distances = new double[capacity];
+        positions = new int[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return distances.length;
+    }
+
+    public boolean isFull() {
+        return size == distances.length;
+    }
+
+    /**
+     * Distance a candidate has to beat (or tie with a smaller position) to enter the heap; infinite until the heap is
+     * full.
+     */
+    public double worstDistance() {
+        return size == distances.length ? distances[0] : Double.POSITIVE_INFINITY;
+    }
+
+    public void offer( double distance, int position ) {
+        if ( size < distances.length ) {
+            int index = size++;
+            while ( index > 0 ) {
+                int parent = ( index - 1 ) >>> 1;
+                if ( !isFarther( distance, position, distances[parent], positions[parent] ) ) {
+                    break;
+                }
+                distances[index] = distances[parent];
+                positions[index] = positions[parent];
+                index = parent;
+            }
+            distances[index] = distance;
+            positions[index] = position;
+        } else if ( isFarther( distances[0], positions[0], distance, position ) ) {
+            siftDown( 0, distance, position, size );
+        }
+    }
+
+    /**
+     * Sorts the kept neighbours from the nearest to the farthest in place (heap sort). The heap must be cleared before
+     * it is offered new candidates again.
+     */
+    public void sortAscending() {
+        for ( int last = size - 1; last > 0; last-- ) {
+            double distance = distances[last];
+            int position = positions[last];
+            distances[last] = distances[0];
+            positions[last] = positions[0];
+            siftDown( 0, distance, position, last );
+        }
+    }
+
+    public double getDistance( int index ) {
+        return distances[index];
+    }
+
+    public int getPosition( int index ) {
+        return positions[index];
+    }
+
+    private void siftDown( int index, double distance, int position, int heapSize ) {
+        while ( true ) {
+            int child = 2 * index + 1;
+            if ( child >= heapSize ) {
+                break;
+            }
+            if ( child + 1 < heapSize && isFarther( distances[child + 1], positions[child + 1], distances[child], positions[child] ) ) {
+                child++;
+            }
+            if ( !isFarther( distances[child], positions[child], distance, position ) ) {
+                break;
+            }
+            distances[index] = distances[child];
+            positions[index] = positions[child];
+            index = child;
+        }
+        distances[index] = distance;
+        positions[index] = position;
+    }
+
+    private static boolean isFarther( double distance, int position, double otherDistance, int otherPosition ) {
+        return distance > otherDistance || ( distance == otherDistance && position > otherPosition );
+    }
+
+}
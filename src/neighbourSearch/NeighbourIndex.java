@@ -0,0 +1,20 @@
+package neighbourSearch;
+
+/**
+ * Exact nearest neighbour index over the training points of one fold. Points are packed row by row (point i occupies
+ * points[i * dimension .. (i + 1) * dimension)) and are reported by their row number, which is the training position
+ * in the fold.
+ */
+public interface NeighbourIndex {
+
+    /**
+     * Offers to the heap every point that can still be one of its nearest neighbours of the query.
+     */
+    void search( double[] query, NeighbourHeap heap );
+
+    /**
+     * Number of point and node distances computed by all searches so far.
+     */
+    long getDistanceEvaluations();
+
+}
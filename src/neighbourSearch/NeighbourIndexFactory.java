@@ -0,0 +1,11 @@
+package neighbourSearch;
+
+/**
+ * Builds the neighbour index of one fold over training points packed row by row. Returning null means that the
+ * classifier scans the training set itself.
+ */
+public interface NeighbourIndexFactory {
+
+    NeighbourIndex createIndex( double[] points, int dimension );
+
+}
@@ -0,0 +1,47 @@
+package neighbourSearch;
+
+/**
+ * How a k-NN classifier finds the nearest training probes. All methods are exact; apart from BLOCKED, which may break
+ * ties between (nearly) equal distances differently, they return the same neighbours.
+ */
+public enum NeighbourSearchMethod implements NeighbourIndexFactory {
+
+    BRUTE_FORCE,
+    /**
+     * Scan over the training set that stops summing a distance as soon as it exceeds the current k-th best, with the
+     * most discriminative attributes summed first.
+     */
+    PARTIAL_DISTANCE,
+    KD_TREE,
+    BALL_TREE,
+    /**
+     * All test probes of a fold at once through the BlockedDistanceEngine instead of one query at a time.
+     */
+    BLOCKED,
+    /**
+     * KD-tree up to MAXIMUM_KD_TREE_DIMENSION features, ball tree above, partial distance scan for small training sets or when
+     * the index turns out to visit most of the points anyway.
+     */
+    AUTO;
+
+    public static final int MAXIMUM_KD_TREE_DIMENSION = 20;
+    public static final int MINIMUM_INDEXED_POINTS = 128;
+
+    @Override
+    public NeighbourIndex createIndex( double[] points, int dimension ) {
+        switch ( this ) {
+            case KD_TREE:
+                return new KDTree( points, dimension );
+            case BALL_TREE:
+                return new BallTree( points, dimension );
+            case AUTO:
+                if ( points.length < MINIMUM_INDEXED_POINTS * dimension ) {
+                    return null;
+                }
+                return dimension <= MAXIMUM_KD_TREE_DIMENSION ? new KDTree( points, dimension ) : new BallTree( points, dimension );
+            default:
+                return null;
+        }
+    }
+
+}
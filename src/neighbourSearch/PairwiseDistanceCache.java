@@ -0,0 +1,199 @@
+package neighbourSearch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import probesUtilities.DataSet;
+
+/**
+ * Squared distances between probes of one dataset over one set of selected attributes, shared by all folds and
+ * bootstrap trials evaluated on them. Probes are identified by their index in the dataset, so a pair computed for one
+ * fold is looked up by every other fold that contains it.
+ * <p>
+ * Up to maximumCachedDistances pairs the whole lower triangle is computed once up front. For larger datasets the
+ * pairs are cached in square blocks of BLOCK_SIZE x BLOCK_SIZE probes, computed whole on the first lookup that falls
+ * into them and kept in a fixed-size hash table of at most maximumCachedDistances / BLOCK_SIZE^2 blocks, so memory
+ * stays bounded whatever the probe count. Once the bound is reached, distances outside the cached blocks are computed
+ * without caching. Every fold sweeps over the blocks in the same order, which is the worst case of any recency-based
+ * eviction (each block is evicted just before it is needed again and the cache only adds churn), while keeping the
+ * first blocks makes about the cached fraction of repeated lookups hit.
+ * <p>
+ * Distances are summed in the same order as by a k-NN scan, so cached and computed values are identical. Safe to
+ * share between folds evaluated in parallel: a block is published through the table only after all its entries are
+ * written, and a lookup that finds a block still being computed by another fold computes its distance directly.
+ */
+public class PairwiseDistanceCache {
+
+    public static final long DEFAULT_MAXIMUM_CACHED_DISTANCES = 1L << 24;
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    /**
+     * Cap on the cached blocks, which keeps the slot table (twice as many slots) within int indexes.
+     */
+    private static final int MAXIMUM_BLOCK_COUNT = 1 << 28;
+    private static final long EMPTY_SLOT = -1;
+
+    private final DataSet dataSet;
+    private final double[] values;
+    private final int featureCount;
+    private final int[] attributes;
+    private final double[] triangle;
+    private final int sampleTotal;
+    private final int blockRows;
+    /**
+     * Open addressing table of the cached blocks: slot i holds the block with id slotBlockIds[i] (row * blockRows +
+     * column), or EMPTY_SLOT. Entry (row, column) of a block holds the distance between the probes row and column of
+     * the block; both orientations of a pair are kept, so the distances from one probe to consecutive probes are
+     * contiguous. A claimed slot has a null block until the block is fully computed.
+     */
+    private final AtomicLongArray slotBlockIds;
+    private final AtomicReferenceArray<double[]> slotBlocks;
+    private final int slotShift;
+    private final int maximumBlockCount;
+    private final AtomicInteger cachedBlockCount = new AtomicInteger();
+
+    public PairwiseDistanceCache( DataSet dataSet, int[] attributes ) {
+        this( dataSet, attributes, DEFAULT_MAXIMUM_CACHED_DISTANCES );
+    }
+
+    public PairwiseDistanceCache( DataSet dataSet, int[] attributes, long maximumCachedDistances ) {
+        this.dataSet = dataSet;
+        values = dataSet.getValues();
+        featureCount = dataSet.getFeatureCount();
+        this.attributes = attributes.clone();
+        sampleTotal = dataSet.getClassLabels().length;
+        blockRows = ( sampleTotal + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        if ( (long) sampleTotal * ( sampleTotal - 1 ) / 2 <= maximumCachedDistances ) {
+            triangle = computeTriangle( sampleTotal );
+            maximumBlockCount = 0;
+        } else {
+            triangle = null;
+            maximumBlockCount = (int) Math.min( Math.min( (long) blockRows * blockRows, maximumCachedDistances / ( BLOCK_SIZE * BLOCK_SIZE ) ), MAXIMUM_BLOCK_COUNT );
+        }
+        if ( maximumBlockCount > 0 ) {
+            int slotCount = Integer.highestOneBit( 2 * maximumBlockCount - 1 ) << 1;
+            slotShift = 64 - Integer.numberOfTrailingZeros( slotCount );
+            slotBlockIds = new AtomicLongArray( slotCount );
+            for ( int slot = 0; slot < slotCount; slot++ ) {
+                slotBlockIds.set( slot, EMPTY_SLOT );
+            }
+            slotBlocks = new AtomicReferenceArray<>( slotCount );
+        } else {
+            slotShift = 0;
+            slotBlockIds = null;
+            slotBlocks = null;
+        }
+    }
+
+    /**
+     * Whether the cache holds distances of this dataset over exactly these attributes.
+     */
+    public boolean covers( DataSet dataSet, int[] attributes ) {
+        return this.dataSet == dataSet && Arrays.equals( this.attributes, attributes );
+    }
+
+    public boolean isDense() {
+        return triangle != null;
+    }
+
+    /**
+     * distances[i] = squared distance between probe and probes[i].
+     */
+    public void fillSquaredDistances( int probe, int[] probes, double[] distances ) {
+        for ( int index = 0; index < probes.length; index++ ) {
+            distances[index] = getSquaredDistance( probe, probes[index] );
+        }
+    }
+
+    public double getSquaredDistance( int firstProbe, int secondProbe ) {
+        if ( triangle != null ) {
+            int row = Math.max( firstProbe, secondProbe );
+            int column = Math.min( firstProbe, secondProbe );
+            return row == column ? 0.0 : triangle[(int) ( (long) row * ( row - 1 ) / 2 + column )];
+        }
+        double[] block = getBlock( firstProbe >>> BLOCK_SHIFT, secondProbe >>> BLOCK_SHIFT );
+        if ( block == null ) {
+            return computeSquaredDistance( firstProbe, secondProbe );
+        }
+        return block[( firstProbe & BLOCK_MASK ) << BLOCK_SHIFT | secondProbe & BLOCK_MASK];
+    }
+
+    private double[] computeTriangle( int sampleTotal ) {
+        double[] distances = new double[(int) ( (long) sampleTotal * ( sampleTotal - 1 ) / 2 )];
+        int index = 0;
+        for ( int row = 1; row < sampleTotal; row++ ) {
+            for ( int column = 0; column < row; column++ ) {
+                distances[index++] = computeSquaredDistance( row, column );
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Returns the cached block, computing it while under the bound; null when it is not cached and the bound has been
+     * reached, or while another fold is still computing it.
+     */
+    private double[] getBlock( int blockRow, int blockColumn ) {
+        if ( maximumBlockCount == 0 ) {
+            return null;
+        }
+        long blockId = (long) blockRow * blockRows + blockColumn;
+        int slot = (int) ( ( blockId * 0x9E3779B97F4A7C15L ) >>> slotShift );
+        int slotMask = slotBlocks.length() - 1;
+        while ( true ) {
+            long slotBlockId = slotBlockIds.get( slot );
+            if ( slotBlockId == blockId ) {
+                return slotBlocks.get( slot );
+            }
+            if ( slotBlockId == EMPTY_SLOT ) {
+                break;
+            }
+            slot = ( slot + 1 ) & slotMask;
+        }
+        if ( cachedBlockCount.get() >= maximumBlockCount ) {
+            return null;
+        }
+        if ( cachedBlockCount.incrementAndGet() > maximumBlockCount ) {
+            cachedBlockCount.decrementAndGet();
+            return null;
+        }
+        while ( !slotBlockIds.compareAndSet( slot, EMPTY_SLOT, blockId ) ) {
+            if ( slotBlockIds.get( slot ) == blockId ) {
+                cachedBlockCount.decrementAndGet(); // claimed by another fold in the meantime
+                return slotBlocks.get( slot );
+            }
+            slot = ( slot + 1 ) & slotMask;
+        }
+        double[] block = computeBlock( blockRow, blockColumn );
+        slotBlocks.set( slot, block );
+        return block;
+    }
+
+    private double[] computeBlock( int blockRow, int blockColumn ) {
+        double[] block = new double[BLOCK_SIZE * BLOCK_SIZE];
+        int firstRowProbe = blockRow << BLOCK_SHIFT;
+        int firstColumnProbe = blockColumn << BLOCK_SHIFT;
+        int rowCount = Math.min( BLOCK_SIZE, sampleTotal - firstRowProbe );
+        int columnCount = Math.min( BLOCK_SIZE, sampleTotal - firstColumnProbe );
+        for ( int row = 0; row < rowCount; row++ ) {
+            for ( int column = 0; column < columnCount; column++ ) {
+                block[row << BLOCK_SHIFT | column] = computeSquaredDistance( firstRowProbe + row, firstColumnProbe + column );
+            }
+        }
+        return block;
+    }
+
+    private double computeSquaredDistance( int firstProbe, int secondProbe ) {
+        int firstOffset = firstProbe * featureCount;
+        int secondOffset = secondProbe * featureCount;
+        double distance = 0.0;
+        for ( int attributeIndex : attributes ) {
+            double difference = values[firstOffset + attributeIndex] - values[secondOffset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+}
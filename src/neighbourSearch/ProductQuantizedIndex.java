@@ -0,0 +1,167 @@
+package neighbourSearch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product quantization: the attributes are cut into consecutive subvectors of subvectorLength attributes, every
+ * subspace gets its own codebook of up to 256 centroids found by k-means, and a point is stored as one byte per
+ * subspace - the number of its closest centroid. A query first computes its squared distance to every centroid of every
+ * subspace; the distance to a point is then the sum of one table entry per subspace.
+ * <p>
+ * Codebooks are trained on at most TRAINING_SAMPLE_SIZE points drawn with the given seed, so building the index stays
+ * cheap on big training sets.
+ */
+public class ProductQuantizedIndex extends QuantizedIndex {
+
+    private static final int MAXIMUM_CENTROIDS = 256;
+    private static final int TRAINING_SAMPLE_SIZE = 4096;
+    private static final int KMEANS_ITERATIONS = 10;
+
+    private final int subspaceCount;
+    private final int[] subspaceStart;
+    private final int[] subspaceEnd;
+    private final int centroidCount;
+    /**
+     * codebooks[subspace][centroid * subvectorLength + attribute of the subspace]
+     */
+    private final double[][] codebooks;
+    private final byte[] codes;
+    private final double[] distanceTable;
+
+    public ProductQuantizedIndex( double[] points, int dimension, int subvectorLength, int rerankCount, long seed ) {
+        super( points, dimension, rerankCount );
+        if ( subvectorLength < 1 ) {
+            throw new IllegalArgumentException( "Subvectors need at least one attribute" );
+        }
+        subspaceCount = ( dimension + subvectorLength - 1 ) / subvectorLength;
+        subspaceStart = new int[subspaceCount];
+        subspaceEnd = new int[subspaceCount];
+        for ( int subspace = 0; subspace < subspaceCount; subspace++ ) {
+            subspaceStart[subspace] = subspace * subvectorLength;
+            subspaceEnd[subspace] = Math.min( dimension, subspaceStart[subspace] + subvectorLength );
+        }
+        centroidCount = Math.min( MAXIMUM_CENTROIDS, pointCount );
+        int[] trainingSample = drawTrainingSample( new Random( seed ) );
+        codebooks = new double[subspaceCount][];
+        codes = new byte[pointCount * subspaceCount];
+        for ( int subspace = 0; subspace < subspaceCount; subspace++ ) {
+            codebooks[subspace] = trainCodebook( points, subspace, trainingSample );
+            for ( int position = 0; position < pointCount; position++ ) {
+                codes[position * subspaceCount + subspace] = (byte) closestCentroid( points, position, subspace );
+            }
+        }
+        distanceTable = new double[subspaceCount * centroidCount];
+    }
+
+    public static NeighbourIndexFactory factory( int subvectorLength, int rerankCount, long seed ) {
+        return ( points, dimension ) -> new ProductQuantizedIndex( points, dimension, subvectorLength, rerankCount, seed );
+    }
+
+    @Override
+    public int getBytesPerPoint() {
+        return subspaceCount;
+    }
+
+    @Override
+    protected void prepareQuery( double[] query ) {
+        for ( int subspace = 0; subspace < subspaceCount; subspace++ ) {
+            int subvectorLength = subspaceEnd[subspace] - subspaceStart[subspace];
+            double[] codebook = codebooks[subspace];
+            for ( int centroid = 0; centroid < centroidCount; centroid++ ) {
+                double distance = 0.0;
+                for ( int attributeIndex = 0; attributeIndex < subvectorLength; attributeIndex++ ) {
+                    double difference = query[subspaceStart[subspace] + attributeIndex] - codebook[centroid * subvectorLength + attributeIndex];
+                    distance += difference * difference;
+                }
+                distanceTable[subspace * centroidCount + centroid] = distance;
+            }
+        }
+    }
+
+    @Override
+    protected double approximateDistance( int position ) {
+        int offset = position * subspaceCount;
+        double distance = 0.0;
+        for ( int subspace = 0; subspace < subspaceCount; subspace++ ) {
+            distance += distanceTable[subspace * centroidCount + ( codes[offset + subspace] & 0xFF )];
+        }
+        return distance;
+    }
+
+    /**
+     * Random sample of distinct positions in random order (partial Fisher-Yates shuffle).
+     */
+    private int[] drawTrainingSample( Random random ) {
+        int[] shuffledPositions = new int[pointCount];
+        for ( int position = 0; position < pointCount; position++ ) {
+            shuffledPositions[position] = position;
+        }
+        int sampleSize = Math.min( TRAINING_SAMPLE_SIZE, pointCount );
+        for ( int index = 0; index < sampleSize; index++ ) {
+            int swapIndex = index + random.nextInt( pointCount - index );
+            int position = shuffledPositions[swapIndex];
+            shuffledPositions[swapIndex] = shuffledPositions[index];
+            shuffledPositions[index] = position;
+        }
+        int[] trainingSample = new int[sampleSize];
+        System.arraycopy( shuffledPositions, 0, trainingSample, 0, sampleSize );
+        return trainingSample;
+    }
+
+    /**
+     * Lloyd iterations starting from the first centroidCount sample points; a centroid left without points keeps its
+     * place.
+     */
+    private double[] trainCodebook( double[] points, int subspace, int[] trainingSample ) {
+        int subvectorLength = subspaceEnd[subspace] - subspaceStart[subspace];
+        double[] codebook = new double[centroidCount * subvectorLength];
+        for ( int centroid = 0; centroid < centroidCount; centroid++ ) {
+            System.arraycopy( points, trainingSample[centroid] * dimension + subspaceStart[subspace], codebook, centroid * subvectorLength, subvectorLength );
+        }
+        codebooks[subspace] = codebook;
+        double[] sums = new double[codebook.length];
+        int[] counts = new int[centroidCount];
+        for ( int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++ ) {
+            Arrays.fill( sums, 0.0 );
+            Arrays.fill( counts, 0 );
+            for ( int position : trainingSample ) {
+                int centroid = closestCentroid( points, position, subspace );
+                counts[centroid]++;
+                for ( int attributeIndex = 0; attributeIndex < subvectorLength; attributeIndex++ ) {
+                    sums[centroid * subvectorLength + attributeIndex] += points[position * dimension + subspaceStart[subspace] + attributeIndex];
+                }
+            }
+            for ( int centroid = 0; centroid < centroidCount; centroid++ ) {
+                if ( counts[centroid] == 0 ) {
+                    continue;
+                }
+                for ( int attributeIndex = 0; attributeIndex < subvectorLength; attributeIndex++ ) {
+                    codebook[centroid * subvectorLength + attributeIndex] = sums[centroid * subvectorLength + attributeIndex] / counts[centroid];
+                }
+            }
+        }
+        return codebook;
+    }
+
+    private int closestCentroid( double[] points, int position, int subspace ) {
+        int subvectorLength = subspaceEnd[subspace] - subspaceStart[subspace];
+        int pointOffset = position * dimension + subspaceStart[subspace];
+        double[] codebook = codebooks[subspace];
+        double smallestDistance = Double.POSITIVE_INFINITY;
+        int closest = 0;
+        for ( int centroid = 0; centroid < centroidCount; centroid++ ) {
+            double distance = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < subvectorLength; attributeIndex++ ) {
+                double difference = points[pointOffset + attributeIndex] - codebook[centroid * subvectorLength + attributeIndex];
+                distance += difference * difference;
+            }
+            if ( distance < smallestDistance ) {
+                smallestDistance = distance;
+                closest = centroid;
+            }
+        }
+        return closest;
+    }
+
+}
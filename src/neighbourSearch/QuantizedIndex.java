@@ -0,0 +1,93 @@
+package neighbourSearch;
+
+/**
+ * Approximate nearest neighbour index scanning compact codes of the points instead of the points themselves. A query
+ * is compared against every code with an asymmetric distance - the query stays exact, only the points are quantized.
+ * <p>
+ * Without re-ranking the approximate distances are offered to the heap as they are. With re-ranking, the rerankCount
+ * (at least k) closest codes are collected first and only those are offered with their exact distance. The index then
+ * keeps a reference to the plain points it was built from, so re-ranking buys the exact order with the memory the
+ * codes would save: only the configuration without re-ranking stores less than the points.
+ */
+public abstract class QuantizedIndex implements NeighbourIndex {
+
+    protected final int dimension;
+    protected final int pointCount;
+    private final double[] points;
+    private final int rerankCount;
+    private NeighbourHeap candidateHeap;
+    private long distanceEvaluations;
+
+    /**
+     * @param rerankCount how many approximate candidates are re-ranked by exact distance, 0 for none
+     */
+    protected QuantizedIndex( double[] points, int dimension, int rerankCount ) {
+        if ( rerankCount < 0 ) {
+            throw new IllegalArgumentException( "Re-rank count cannot be negative" );
+        }
+        this.dimension = dimension;
+        pointCount = points.length / dimension;
+        this.points = rerankCount > 0 ? points : null;
+        this.rerankCount = rerankCount;
+    }
+
+    /**
+     * Memory taken by the code of one point, without the per-index tables and the points kept for re-ranking.
+     */
+    public abstract int getBytesPerPoint();
+
+    /**
+     * Whether the plain points are kept alongside the codes for re-ranking.
+     */
+    public boolean isKeepingPoints() {
+        return points != null;
+    }
+
+    /**
+     * Precomputes whatever the query needs before approximateDistance is called for each point.
+     */
+    protected abstract void prepareQuery( double[] query );
+
+    protected abstract double approximateDistance( int position );
+
+    @Override
+    public void search( double[] query, NeighbourHeap heap ) {
+        prepareQuery( query );
+        distanceEvaluations += pointCount;
+        if ( points == null ) {
+            for ( int position = 0; position < pointCount; position++ ) {
+                heap.offer( approximateDistance( position ), position );
+            }
+            return;
+        }
+        int candidateCount = Math.min( Math.max( rerankCount, heap.capacity() ), pointCount );
+        if ( candidateHeap == null || candidateHeap.capacity() != candidateCount ) {
+            candidateHeap = new NeighbourHeap( candidateCount );
+        }
+        candidateHeap.clear();
+        for ( int position = 0; position < pointCount; position++ ) {
+            candidateHeap.offer( approximateDistance( position ), position );
+        }
+        for ( int candidate = 0; candidate < candidateHeap.size(); candidate++ ) {
+            int position = candidateHeap.getPosition( candidate );
+            heap.offer( squaredDistance( query, position ), position );
+        }
+        distanceEvaluations += candidateHeap.size();
+    }
+
+    @Override
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    private double squaredDistance( double[] query, int position ) {
+        int offset = position * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = query[attributeIndex] - points[offset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+}
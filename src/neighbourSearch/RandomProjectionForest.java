@@ -0,0 +1,171 @@
+package neighbourSearch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate nearest neighbour index. Each tree splits its points recursively by the hyperplane halfway between two
+ * randomly drawn points until leaves hold at most leafSize points; a query only descends to one leaf per tree and
+ * offers the union of those leaves to the heap. More trees and bigger leaves raise the recall at the cost of more
+ * distance computations.
+ */
+public class RandomProjectionForest implements NeighbourIndex {
+
+    private static final int SPLIT_ATTEMPTS = 5;
+
+    private final double[] points;
+    private final int dimension;
+    private final int leafSize;
+    private final Random random;
+    private final int[][] treeOrder;
+    private final int[][] nodeStart;
+    private final int[][] nodeEnd;
+    private final int[][] leftChild;
+    private final int[][] rightChild;
+    private final double[][] normals;
+    private final double[][] offsets;
+    private final int[] lastVisit;
+    private int nodeCount;
+    private int visit;
+    private long distanceEvaluations;
+
+    public RandomProjectionForest( double[] points, int dimension, int treeCount, int leafSize, long seed ) {
+        if ( treeCount < 1 || leafSize < 1 ) {
+            throw new IllegalArgumentException( "Forest needs at least one tree and leaves of at least one point" );
+        }
+        this.points = points;
+        this.dimension = dimension;
+        this.leafSize = leafSize;
+        random = new Random( seed );
+        int pointCount = points.length / dimension;
+        int maximumNodeCount = 2 * pointCount + 1;
+        treeOrder = new int[treeCount][];
+        nodeStart = new int[treeCount][maximumNodeCount];
+        nodeEnd = new int[treeCount][maximumNodeCount];
+        leftChild = new int[treeCount][maximumNodeCount];
+        rightChild = new int[treeCount][maximumNodeCount];
+        normals = new double[treeCount][];
+        offsets = new double[treeCount][maximumNodeCount];
+        lastVisit = new int[pointCount];
+        for ( int tree = 0; tree < treeCount; tree++ ) {
+            buildTree( tree, pointCount );
+        }
+    }
+
+    public static NeighbourIndexFactory factory( int treeCount, int leafSize, long seed ) {
+        return ( points, dimension ) -> new RandomProjectionForest( points, dimension, treeCount, leafSize, seed );
+    }
+
+    @Override
+    public void search( double[] query, NeighbourHeap heap ) {
+        visit++;
+        for ( int tree = 0; tree < treeOrder.length; tree++ ) {
+            int node = 0;
+            while ( leftChild[tree][node] >= 0 ) {
+                node = project( normals[tree], node, query, 0 ) <= offsets[tree][node] ? leftChild[tree][node] : rightChild[tree][node];
+            }
+            for ( int index = nodeStart[tree][node]; index < nodeEnd[tree][node]; index++ ) {
+                int position = treeOrder[tree][index];
+                if ( lastVisit[position] != visit ) {
+                    lastVisit[position] = visit;
+                    heap.offer( squaredDistance( query, position ), position );
+                    distanceEvaluations++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    private void buildTree( int tree, int pointCount ) {
+        int[] order = new int[pointCount];
+        for ( int position = 0; position < pointCount; position++ ) {
+            order[position] = position;
+        }
+        treeOrder[tree] = order;
+        normals[tree] = new double[( 4 * pointCount / leafSize + 1 ) * dimension];
+        nodeStart[tree][0] = 0;
+        nodeEnd[tree][0] = pointCount;
+        nodeCount = 1;
+        for ( int node = 0; node < nodeCount; node++ ) {
+            leftChild[tree][node] = -1;
+            rightChild[tree][node] = -1;
+            int start = nodeStart[tree][node];
+            int end = nodeEnd[tree][node];
+            if ( end - start <= leafSize ) {
+                continue;
+            }
+            if ( normals[tree].length < ( node + 1 ) * dimension ) {
+                normals[tree] = Arrays.copyOf( normals[tree], 2 * normals[tree].length );
+            }
+            int middle = splitByRandomHyperplane( tree, node, start, end );
+            leftChild[tree][node] = addNode( tree, start, middle );
+            rightChild[tree][node] = addNode( tree, middle, end );
+        }
+    }
+
+    private int addNode( int tree, int start, int end ) {
+        nodeStart[tree][nodeCount] = start;
+        nodeEnd[tree][nodeCount] = end;
+        return nodeCount++;
+    }
+
+    /**
+     * Partitions order[start, end) by the hyperplane halfway between two random points of the node and returns the
+     * first index of the right side. When no drawn pair separates the points (e.g. they are all identical) the node is
+     * cut in the middle and every query follows its right side.
+     */
+    private int splitByRandomHyperplane( int tree, int node, int start, int end ) {
+        int[] order = treeOrder[tree];
+        double[] normal = normals[tree];
+        int normalOffset = node * dimension;
+        for ( int attempt = 0; attempt < SPLIT_ATTEMPTS; attempt++ ) {
+            int first = order[start + random.nextInt( end - start )];
+            int second = order[start + random.nextInt( end - start )];
+            double offset = 0.0;
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                double firstValue = points[first * dimension + attributeIndex];
+                double secondValue = points[second * dimension + attributeIndex];
+                normal[normalOffset + attributeIndex] = secondValue - firstValue;
+                offset += ( secondValue - firstValue ) * ( firstValue + secondValue ) / 2;
+            }
+            int middle = start;
+            for ( int index = start; index < end; index++ ) {
+                if ( project( normal, node, points, order[index] * dimension ) <= offset ) {
+                    int swapped = order[middle];
+                    order[middle++] = order[index];
+                    order[index] = swapped;
+                }
+            }
+            if ( middle > start && middle < end ) {
+                offsets[tree][node] = offset;
+                return middle;
+            }
+        }
+        offsets[tree][node] = Double.NEGATIVE_INFINITY;
+        return ( start + end ) >>> 1;
+    }
+
+    private double project( double[] normal, int node, double[] vector, int vectorOffset ) {
+        int normalOffset = node * dimension;
+        double projection = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            projection += normal[normalOffset + attributeIndex] * vector[vectorOffset + attributeIndex];
+        }
+        return projection;
+    }
+
+    private double squaredDistance( double[] query, int position ) {
+        int offset = position * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = query[attributeIndex] - points[offset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+}
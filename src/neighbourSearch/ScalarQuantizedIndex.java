@@ -0,0 +1,116 @@
+package neighbourSearch;
+
+import java.util.Arrays;
+
+/**
+ * Quantizes every attribute to one byte - a level on a grid of its own - instead of eight. When the training values of
+ * an attribute already lie on an evenly spaced grid of at most 256 steps (as the leaf features, multiples of 1/512,
+ * do) that grid is used and its codes are lossless; otherwise the range of its values is cut into 256 levels. Every
+ * attribute thus gets the full resolution whatever the ranges of the others. The query is put on the same grids, so
+ * the scan sums squared differences of small integers, each weighted by the squared step of its attribute.
+ */
+public class ScalarQuantizedIndex extends QuantizedIndex {
+
+    private static final int LEVELS = 256;
+    private static final int GRID_SAMPLE_SIZE = 1 << 16;
+    /**
+     * A value is on a detected grid when it is this close (in steps) to a grid point - values read from text files
+     * are rounded.
+     */
+    private static final double GRID_TOLERANCE = 0.05;
+
+    private final byte[] codes;
+    private final double[] minimums;
+    private final double[] steps;
+    private final double[] squaredSteps;
+    private final int[] queryLevels;
+
+    public ScalarQuantizedIndex( double[] points, int dimension, int rerankCount ) {
+        super( points, dimension, rerankCount );
+        minimums = new double[dimension];
+        steps = new double[dimension];
+        squaredSteps = new double[dimension];
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double smallestValue = Double.POSITIVE_INFINITY;
+            double largestValue = Double.NEGATIVE_INFINITY;
+            for ( int index = attributeIndex; index < points.length; index += dimension ) {
+                smallestValue = Math.min( smallestValue, points[index] );
+                largestValue = Math.max( largestValue, points[index] );
+            }
+            minimums[attributeIndex] = pointCount == 0 ? 0.0 : smallestValue;
+            steps[attributeIndex] = chooseStep( points, attributeIndex, largestValue );
+            squaredSteps[attributeIndex] = steps[attributeIndex] * steps[attributeIndex];
+        }
+        codes = new byte[points.length];
+        for ( int index = 0; index < codes.length; index++ ) {
+            int attributeIndex = index % dimension;
+            codes[index] = (byte) Math.max( 0, Math.min( LEVELS - 1, Math.round( ( points[index] - minimums[attributeIndex] ) / steps[attributeIndex] ) ) );
+        }
+        queryLevels = new int[dimension];
+    }
+
+    public static NeighbourIndexFactory factory( int rerankCount ) {
+        return ( points, dimension ) -> new ScalarQuantizedIndex( points, dimension, rerankCount );
+    }
+
+    @Override
+    public int getBytesPerPoint() {
+        return dimension;
+    }
+
+    @Override
+    protected void prepareQuery( double[] query ) {
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            // queries outside the training range stay beyond the outermost levels
+            queryLevels[attributeIndex] = (int) Math.max( -LEVELS, Math.min( 2 * LEVELS, Math.round( ( query[attributeIndex] - minimums[attributeIndex] ) / steps[attributeIndex] ) ) );
+        }
+    }
+
+    @Override
+    protected double approximateDistance( int position ) {
+        int offset = position * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            int difference = queryLevels[attributeIndex] - ( codes[offset + attributeIndex] & 0xFF );
+            distance += squaredSteps[attributeIndex] * ( difference * difference );
+        }
+        return distance;
+    }
+
+    /**
+     * Smallest gap between the distinct values of a sample of one attribute, accepted as its grid step when its whole
+     * range fits in LEVELS steps and every value lies on the grid; otherwise range / (LEVELS - 1).
+     */
+    private double chooseStep( double[] points, int attributeIndex, double largestValue ) {
+        double minimum = minimums[attributeIndex];
+        double range = largestValue - minimum;
+        if ( !( range > 0.0 ) ) {
+            return 1.0; // a constant attribute adds the same to every distance, whatever its step
+        }
+        int stride = Math.max( 1, pointCount / GRID_SAMPLE_SIZE );
+        double[] sample = new double[( pointCount + stride - 1 ) / stride];
+        for ( int index = 0; index < sample.length; index++ ) {
+            sample[index] = points[index * stride * dimension + attributeIndex];
+        }
+        Arrays.sort( sample );
+        double smallestGap = Double.POSITIVE_INFINITY;
+        for ( int index = 1; index < sample.length; index++ ) {
+            double gap = sample[index] - sample[index - 1];
+            if ( gap > range * 1e-6 ) {
+                smallestGap = Math.min( smallestGap, gap );
+            }
+        }
+        if ( range / smallestGap <= LEVELS - 1 + GRID_TOLERANCE ) {
+            boolean onGrid = true;
+            for ( int index = attributeIndex; index < points.length && onGrid; index += dimension ) {
+                double level = ( points[index] - minimum ) / smallestGap;
+                onGrid = Math.abs( level - Math.rint( level ) ) <= GRID_TOLERANCE;
+            }
+            if ( onGrid ) {
+                return smallestGap;
+            }
+        }
+        return range / ( LEVELS - 1 );
+    }
+
+}
@@ -0,0 +1,158 @@
+package neighbourSearch;
+
+/**
+ * Common part of the binary space partitioning trees. The points are copied in tree order, so every leaf is a
+ * contiguous block of memory, and each node is stored in parallel primitive arrays instead of objects.
+ */
+abstract class SpatialTree implements NeighbourIndex {
+
+    static final int LEAF_SIZE = 16;
+
+    protected final int dimension;
+    protected final double[] treePoints;
+    protected final int[] positions;
+    protected final int[] nodeStart;
+    protected final int[] nodeEnd;
+    protected final int[] leftChild;
+    protected final int[] rightChild;
+    protected final int[] splitDimension;
+    protected final double[] splitValue;
+    protected int nodeCount;
+    protected long distanceEvaluations;
+
+    protected SpatialTree( double[] points, int dimension ) {
+        this.dimension = dimension;
+        int pointCount = points.length / dimension;
+        positions = new int[pointCount];
+        for ( int position = 0; position < pointCount; position++ ) {
+            positions[position] = position;
+        }
+        // only nodes above LEAF_SIZE are split, so every leaf keeps at least LEAF_SIZE / 2 points
+        int maximumNodeCount = 2 * ( pointCount / ( LEAF_SIZE / 2 ) ) + 1;
+        nodeStart = new int[maximumNodeCount];
+        nodeEnd = new int[maximumNodeCount];
+        leftChild = new int[maximumNodeCount];
+        rightChild = new int[maximumNodeCount];
+        splitDimension = new int[maximumNodeCount];
+        splitValue = new double[maximumNodeCount];
+        treePoints = new double[points.length];
+        createNodes( points );
+        for ( int treeIndex = 0; treeIndex < pointCount; treeIndex++ ) {
+            System.arraycopy( points, positions[treeIndex] * dimension, treePoints, treeIndex * dimension, dimension );
+        }
+    }
+
+    @Override
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    protected boolean isLeaf( int node ) {
+        return leftChild[node] < 0;
+    }
+
+    protected void searchLeaf( int node, double[] query, NeighbourHeap heap ) {
+        for ( int treeIndex = nodeStart[node]; treeIndex < nodeEnd[node]; treeIndex++ ) {
+            heap.offer( squaredDistance( query, treeIndex ), positions[treeIndex] );
+        }
+        distanceEvaluations += nodeEnd[node] - nodeStart[node];
+    }
+
+    protected double squaredDistance( double[] query, int treeIndex ) {
+        int offset = treeIndex * dimension;
+        double distance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = query[attributeIndex] - treePoints[offset + attributeIndex];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    protected double coordinate( double[] points, int position, int attributeIndex ) {
+        return points[position * dimension + attributeIndex];
+    }
+
+    /**
+     * Splits the nodes breadth first at the median of the widest dimension until leaves hold at most LEAF_SIZE points.
+     */
+    private void createNodes( double[] points ) {
+        nodeStart[0] = 0;
+        nodeEnd[0] = positions.length;
+        nodeCount = 1;
+        for ( int node = 0; node < nodeCount; node++ ) {
+            leftChild[node] = -1;
+            rightChild[node] = -1;
+            int start = nodeStart[node];
+            int end = nodeEnd[node];
+            if ( end - start <= LEAF_SIZE ) {
+                continue;
+            }
+            splitDimension[node] = findWidestDimension( points, start, end );
+            int middle = ( start + end ) >>> 1;
+            selectMedian( points, start, end, middle, splitDimension[node] );
+            splitValue[node] = coordinate( points, positions[middle], splitDimension[node] );
+            leftChild[node] = addNode( start, middle );
+            rightChild[node] = addNode( middle, end );
+        }
+    }
+
+    private int addNode( int start, int end ) {
+        nodeStart[nodeCount] = start;
+        nodeEnd[nodeCount] = end;
+        return nodeCount++;
+    }
+
+    private int findWidestDimension( double[] points, int start, int end ) {
+        int widestDimension = 0;
+        double widestSpread = -1.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            for ( int index = start; index < end; index++ ) {
+                double value = coordinate( points, positions[index], attributeIndex );
+                minimum = Math.min( minimum, value );
+                maximum = Math.max( maximum, value );
+            }
+            if ( maximum - minimum > widestSpread ) {
+                widestSpread = maximum - minimum;
+                widestDimension = attributeIndex;
+            }
+        }
+        return widestDimension;
+    }
+
+    /**
+     * Quickselect on positions[start, end): afterwards the point at middle has its median coordinate, points before it
+     * are not greater and points after it are not smaller.
+     */
+    private void selectMedian( double[] points, int start, int end, int middle, int attributeIndex ) {
+        int low = start;
+        int high = end - 1;
+        while ( low < high ) {
+            double pivot = coordinate( points, positions[( low + high ) >>> 1], attributeIndex );
+            int left = low;
+            int right = high;
+            while ( left <= right ) {
+                while ( coordinate( points, positions[left], attributeIndex ) < pivot ) {
+                    left++;
+                }
+                while ( coordinate( points, positions[right], attributeIndex ) > pivot ) {
+                    right--;
+                }
+                if ( left <= right ) {
+                    int swapped = positions[left];
+                    positions[left++] = positions[right];
+                    positions[right--] = swapped;
+                }
+            }
+            if ( middle <= right ) {
+                high = right;
+            } else if ( middle >= left ) {
+                low = left;
+            } else {
+                return;
+            }
+        }
+    }
+
+}
@@ -2,170 +2,155 @@ package probesUtilities;
 
 import Jama.Matrix;
 import exceptions.EmptyClusterException;
-import java.util.*;
-
-import static probesUtilities.EuklideanDistance.calculateEuklideanDistanceBetweenMatrixes;
-
+import java.util.Random;
+
+/**
+ * Splits the probes of one class into clusters: k-means for k = 1, 2, ... while the error (mean over the clusters of
+ * the mean distance of their probes to their centroid) keeps dropping by more than H, and the clustering before the
+ * first insignificant drop (or before the first cluster count that leaves a cluster empty) is kept.
+ * <p>
+ * Probes come row-packed (probe i at i * dimension) and clusters are plain indexes: the result is a centroid buffer
+ * and the cluster index of every probe, so no probe is copied.
+ * <p>
+ * For big classes the k-means runs can use mini-batches (useMiniBatches). The price in clustering quality is then
+ * measured on every clustering found: full batch k-means with the same cluster count runs on a random sample of at
+ * most ERROR_GAP_SAMPLE_SIZE probes, and getErrorGap tells how much larger the error of the mini-batch centroids is
+ * on that sample.
+ */
 public class ClusterFinder {
 
     private static final double MAXIMAL_ACCEPTABLE_CLUSTER_CENTROID_DISLOCATION = 0.000001;
     private static final double H = 0.1;
+    /**
+     * Cap on the k-means iterations for one cluster count, in case the centroids keep oscillating above the
+     * acceptable dislocation.
+     */
+    private static final int MAXIMUM_KMEANS_ITERATIONS = 300;
+    public static final int ERROR_GAP_SAMPLE_SIZE = 4096;
+
+    private final Random random;
+    private int miniBatchSize;
+    private int maximumMiniBatchIterations;
+    private double maximumMiniBatchCentroidDislocation;
+    private double errorGap = Double.NaN;
+    private boolean stoppedByEmptyCluster;
+    private int clusterCount;
+    private double[] centroids;
+    private int[] assignment;
+
+    /**
+     * @param random source of initial cluster centroids; pass a seeded one for reproducible clustering
+     */
+    public ClusterFinder( Random random ) {
+        this.random = random;
+    }
 
-    public Map<Matrix, Matrix> assignProbesToClusters( Matrix allProbesInClass ) {
-        Map<Matrix, Matrix> probesGroupedToClusters = new HashMap<>();
-        List<Matrix> clustersCentroids = findOptimalClusters( allProbesInClass );
-        Map<Matrix, List<double[]>> probesAssignedToClusters = assignSamplesToMods( allProbesInClass, clustersCentroids );
-        probesAssignedToClusters.entrySet().forEach( entry -> {
-            probesGroupedToClusters.put( entry.getKey(), convertListOfProbesToMatrix( entry.getValue() ) );
-        } );
-        return probesGroupedToClusters;
+    /**
+     * Switches the k-means runs to mini-batches.
+     *
+     * @param batchSize probes per mini-batch; 0 goes back to full batch iterations
+     * @param maximumIterations cap on the mini-batches of one run
+     * @param maximumCentroidDislocation a run ends after KMeans.MINI_BATCH_PATIENCE batches in a row move no centroid
+     * more than this
+     */
+    public void useMiniBatches( int batchSize, int maximumIterations, double maximumCentroidDislocation ) {
+        miniBatchSize = batchSize;
+        maximumMiniBatchIterations = maximumIterations;
+        maximumMiniBatchCentroidDislocation = maximumCentroidDislocation;
     }
 
-    private List<Matrix> findOptimalClusters( Matrix allProbesInClass ) {
-        List<Double> errors = new ArrayList<>();        
-        Map<Integer, List<Matrix>> modCentersByNumberOfMods = new HashMap<>();
-        int modsCount = 0;        
-        do {
+    /**
+     * @param probes probes of one class, probe i at i * dimension; at least one
+     * @return number of clusters found, see getCentroids and getAssignment
+     */
+    public int findClusters( double[] probes, int dimension ) {
+        KMeans kMeans = miniBatchSize > 0
+                        ? new KMeans( probes, dimension, random, maximumMiniBatchIterations, maximumMiniBatchCentroidDislocation, miniBatchSize )
+                        : new KMeans( probes, dimension, random, MAXIMUM_KMEANS_ITERATIONS, MAXIMAL_ACCEPTABLE_CLUSTER_CENTROID_DISLOCATION );
+        clusterCount = 0;
+        stoppedByEmptyCluster = false;
+        double previousError = Double.NaN;
+        for ( int modsCount = 1;; modsCount++ ) {
+            double[] modCenters;
             try {
-                modsCount += 1;
-                
-                List<Matrix> modCenters = findCentroidsForNClusters( allProbesInClass, modsCount );
-                modCentersByNumberOfMods.put( modsCount, modCenters );
-                errors.add( calculateError( modCenters, allProbesInClass ) );
+                modCenters = kMeans.findCentroids( modsCount );
             } catch ( EmptyClusterException e ) {
-                System.out.println( "Exception" );
+                stoppedByEmptyCluster = true;
                 break;
             }
-        } while ( modsCount < 2 || errorDecreasedSignificantly( errors, modsCount ) );
-        return modCentersByNumberOfMods.get( modsCount - 1 );
-    }
-
-    private Map<Matrix, List<double[]>> assignSamplesToMods( Matrix allProbesInClass, List<Matrix> clustersCentroids ) {
-        Map<Matrix, List<double[]>> probesAssignedToMods = new HashMap<>();
-        clustersCentroids.stream().forEach( ( clustersCentroid ) -> {
-            probesAssignedToMods.put( clustersCentroid, new ArrayList<>() );
-        } );
-        for ( int i = 0; i < allProbesInClass.getColumnDimension(); i++ ) {
-            double[] probe = MatrixUtilities.getProbe( allProbesInClass.getArray(), i );
-            Matrix probeMatrix = new Matrix( probe, 1 );
-            Matrix nearestClusterCentroid = null;
-            double minimalDistance = 0.0;
-            for ( Matrix clusterCentroid : clustersCentroids ) {
-                double distance = calculateEuklideanDistanceBetweenMatrixes( probeMatrix, clusterCentroid );
-                if ( nearestClusterCentroid == null || minimalDistance > distance ) {
-                    minimalDistance = distance;
-                    nearestClusterCentroid = clusterCentroid;
-                }
+            double error = kMeans.getError();
+            if ( modsCount > 1 && !errorDecreasedSignificantly( previousError, error ) ) {
+                break;
             }
-            probesAssignedToMods.get( nearestClusterCentroid ).add( probe );
+            clusterCount = modsCount;
+            centroids = modCenters;
+            assignment = kMeans.getAssignment();
+            previousError = error;
         }
-        return probesAssignedToMods;
+        errorGap = miniBatchSize > 0 ? measureErrorGap( probes, dimension ) : Double.NaN;
+        return clusterCount;
     }
 
-    private boolean errorDecreasedSignificantly( List<Double> errors, int numberOfMods ) {
-        return Math.abs( errors.get( numberOfMods - 2 ) - errors.get( numberOfMods - 1 ) ) > errors.get( numberOfMods - 2 ) * H;
+    /**
+     * Whether the last findClusters stopped because the next cluster count left a cluster empty, rather than because
+     * the error stopped dropping.
+     */
+    public boolean isStoppedByEmptyCluster() {
+        return stoppedByEmptyCluster;
     }
 
-    private List<Matrix> findCentroidsForNClusters( Matrix allProbesInClass, int clusterCount ) {
-        List<Matrix> optimalClusterCentroids = new ArrayList<>();
-        if ( clusterCount > 1 ) {
-            List<Matrix> clustersCentroids = randomModCenters( allProbesInClass, clusterCount );
-
-            double maxCentroidDislocation;
-            do {
-                Map<Matrix, List<double[]>> samplesGroupedByMods = assignSamplesToMods( allProbesInClass, clustersCentroids );
-
-                List<Matrix> newClustersCentroids = correctModCenters( clustersCentroids, samplesGroupedByMods );
-                maxCentroidDislocation = calculateMaximumDislocationOfClustersCentroids( clustersCentroids, newClustersCentroids );
-
-                clustersCentroids = newClustersCentroids;
-            } while ( maxCentroidDislocation > MAXIMAL_ACCEPTABLE_CLUSTER_CENTROID_DISLOCATION );
-            optimalClusterCentroids = clustersCentroids;
-        } else {
-            optimalClusterCentroids.add( calculateMeanValueForMatrix( allProbesInClass ) );
-        }
-        return optimalClusterCentroids;
+    /**
+     * Relative excess of the error of the clusters found over full batch k-means with as many clusters, both measured
+     * on the same random sample of the probes; NaN without mini-batches or when the sample cannot be clustered.
+     */
+    public double getErrorGap() {
+        return errorGap;
     }
 
-    private Matrix calculateMeanValueForMatrix( Matrix matrix ) {
-        double[][] probes = matrix.getArray();
-        double[] meanAttributes = new double[matrix.getRowDimension()];
-
-        for ( int attributeIndex = 0; attributeIndex < meanAttributes.length; attributeIndex++ ) {
-            double mean = 0.0;
-            for ( int probeIndex = 0; probeIndex < probes[attributeIndex].length; probeIndex++ ) {
-                mean += probes[attributeIndex][probeIndex];
-            }
-            meanAttributes[attributeIndex] = mean / probes[attributeIndex].length;
-
+    private double measureErrorGap( double[] probes, int dimension ) {
+        int probeCount = probes.length / dimension;
+        int sampleSize = Math.min( ERROR_GAP_SAMPLE_SIZE, probeCount );
+        int[] shuffledProbes = new int[probeCount];
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            shuffledProbes[probe] = probe;
         }
-        return new Matrix( meanAttributes, 1 );
-    }
-
-    private List<Matrix> randomModCenters( Matrix probes, int numberOfClusters ) {
-        Set<Integer> choosenProbesIndexes = new HashSet<>();
-        List<Matrix> clusters = new ArrayList<>();
-        for ( int i = 0; i < numberOfClusters; i++ ) {
-            int probeIndex;
-            do {
-                probeIndex = new Random().nextInt( probes.getColumnDimension() );
-            } while ( choosenProbesIndexes.contains( probeIndex ) );
-            choosenProbesIndexes.add( probeIndex );
-            double[] probe = MatrixUtilities.getProbe( probes.getArray(), probeIndex );
-
-            clusters.add( new Matrix( probe, 1 ) );
+        double[] sample = new double[sampleSize * dimension];
+        for ( int sampleIndex = 0; sampleIndex < sampleSize; sampleIndex++ ) {
+            int swapIndex = sampleIndex + random.nextInt( probeCount - sampleIndex );
+            int probe = shuffledProbes[swapIndex];
+            shuffledProbes[swapIndex] = shuffledProbes[sampleIndex];
+            shuffledProbes[sampleIndex] = probe;
+            System.arraycopy( probes, probe * dimension, sample, sampleIndex * dimension, dimension );
         }
-        return clusters;
-    }
-
-    private List<Matrix> correctModCenters( List<Matrix> clustersCentroids, Map<Matrix, List<double[]>> samplesGroupedByMods ) {
-        List<Matrix> newClusterCentroids = new ArrayList<>();
-        for ( Matrix clusterCentroid : clustersCentroids ) {
-            List<double[]> probesInCluster = samplesGroupedByMods.get( clusterCentroid );
-            if ( probesInCluster.isEmpty() ) {
-                throw new EmptyClusterException();
-            }
-            Matrix probes = convertListOfProbesToMatrix( probesInCluster );
-            Matrix newClusterCentroid = calculateMeanValueForMatrix( probes );
-            newClusterCentroids.add( newClusterCentroid );
+        KMeans fullBatchKMeans = new KMeans( sample, dimension, random, MAXIMUM_KMEANS_ITERATIONS, MAXIMAL_ACCEPTABLE_CLUSTER_CENTROID_DISLOCATION );
+        try {
+            fullBatchKMeans.findCentroids( clusterCount );
+        } catch ( EmptyClusterException e ) {
+            return Double.NaN;
         }
-        return newClusterCentroids;
+        return fullBatchKMeans.measureError( centroids, clusterCount ) / fullBatchKMeans.getError() - 1.0;
     }
 
-    private Matrix convertListOfProbesToMatrix( List<double[]> probesAsList ) {
-        double[][] probes = new double[probesAsList.get( 0 ).length][probesAsList.size()];
-        for ( int probeIndex = 0; probeIndex < probesAsList.size(); probeIndex++ ) {
-            for ( int attributeIndex = 0; attributeIndex < probes.length; attributeIndex++ ) {
-                probes[attributeIndex][probeIndex] = probesAsList.get( probeIndex )[attributeIndex];
-            }
-        }
-        return new Matrix( probes );
+    /**
+     * Centroids of the clusters found last, cluster c at c * dimension.
+     */
+    public double[] getCentroids() {
+        return centroids;
     }
 
-    private double calculateMaximumDislocationOfClustersCentroids( List<Matrix> clustersCentroids, List<Matrix> newClustersCentroids ) {
-        double maximumDislocation = 0;
-        for ( int clusterIndex = 0; clusterIndex < clustersCentroids.size(); clusterIndex++ ) {
-            double distanceBetweenOldAndNewClusterCentroid
-                   = calculateEuklideanDistanceBetweenMatrixes( clustersCentroids.get( clusterIndex ), newClustersCentroids.get( clusterIndex ) );
-            maximumDislocation = Math.max( maximumDislocation, distanceBetweenOldAndNewClusterCentroid );
-        }
-        return maximumDislocation;
+    /**
+     * Cluster index of every probe clustered last.
+     */
+    public int[] getAssignment() {
+        return assignment;
     }
 
-    private Double calculateError( List<Matrix> clusterCentroids, Matrix allProbesInClass ) {        
-        Map<Matrix, List<double[]>> probesGroupedToClusters = assignSamplesToMods( allProbesInClass, clusterCentroids );
-        double error = 0;
-
-        for ( Matrix clusterCentroid : clusterCentroids ) {
-            List<double[]> probesInCluster = probesGroupedToClusters.get( clusterCentroid );
-            double sum = probesInCluster
-                    .stream()
-                    .mapToDouble( probe -> calculateEuklideanDistanceBetweenMatrixes( clusterCentroid, new Matrix( probe, 1 ) ) )
-                    .sum();
-            error += sum / probesInCluster.size();
-        }
+    public int getClusterCount() {
+        return clusterCount;
+    }
 
-        return error / clusterCentroids.size();
+    private boolean errorDecreasedSignificantly( double previousError, double error ) {
+        return Math.abs( previousError - error ) > previousError * H;
     }
 
     private void printMatrix( Matrix matrix ) {
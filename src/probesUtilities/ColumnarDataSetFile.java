@@ -0,0 +1,196 @@
+package probesUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact columnar binary dataset file. Layout (little endian):
+ * <pre>
+ * int magic, int version, int featureCount, int sampleTotal, int classCount
+ * classCount x ( int nameLength, byte[nameLength] UTF-8 name, int sampleCount )
+ * int[sampleTotal] class labels, padded to a multiple of 8 bytes
+ * featureCount x double[sampleTotal] - one contiguous column per feature
+ * </pre>
+ * Columns are memory-mapped read-only, so opening even a multi-GB file only reads the header and the labels, and
+ * pages are shared by every JVM that maps the same file.
+ */
+public class ColumnarDataSetFile {
+
+    public static final String EXTENSION = "smpd";
+
+    private static final int MAGIC = 0x534D5044;
+    private static final int VERSION = 1;
+    private static final int WRITE_CHUNK_SIZE = 1 << 16;
+
+    private final String[] classNames;
+    private final int[] sampleCount;
+    private final int[] classLabels;
+    private final DoubleBuffer[] columns;
+
+    private ColumnarDataSetFile( String[] classNames, int[] sampleCount, int[] classLabels, DoubleBuffer[] columns ) {
+        this.classNames = classNames;
+        this.sampleCount = sampleCount;
+        this.classLabels = classLabels;
+        this.columns = columns;
+    }
+
+    public static ColumnarDataSetFile open( File file ) throws IOException {
+        try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" );
+              FileChannel channel = randomAccessFile.getChannel() ) {
+            MappedByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, Math.min( channel.size(), Integer.MAX_VALUE ) );
+            header.order( ByteOrder.LITTLE_ENDIAN );
+            if ( header.remaining() < 20 || header.getInt() != MAGIC ) {
+                throw new IOException( file.getName() + " is not a columnar dataset file" );
+            }
+            int version = header.getInt();
+            if ( version != VERSION ) {
+                throw new IOException( "Unsupported columnar dataset version " + version );
+            }
+            int featureCount = header.getInt();
+            int sampleTotal = header.getInt();
+            int classCount = header.getInt();
+            String[] classNames = new String[classCount];
+            int[] sampleCount = new int[classCount];
+            for ( int classIndex = 0; classIndex < classCount; classIndex++ ) {
+                byte[] name = new byte[header.getInt()];
+                header.get( name );
+                classNames[classIndex] = new String( name, StandardCharsets.UTF_8 );
+                sampleCount[classIndex] = header.getInt();
+            }
+            int[] classLabels = new int[sampleTotal];
+            header.asIntBuffer().get( classLabels );
+            long columnsOffset = alignToDouble( header.position() + 4L * sampleTotal );
+            long columnSize = 8L * sampleTotal;
+            if ( channel.size() < columnsOffset + columnSize * featureCount ) {
+                throw new IOException( file.getName() + " is truncated" );
+            }
+
+            DoubleBuffer[] columns = new DoubleBuffer[featureCount];
+            for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+                MappedByteBuffer column = channel.map( FileChannel.MapMode.READ_ONLY, columnsOffset + attributeIndex * columnSize, columnSize );
+                columns[attributeIndex] = column.order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer();
+            }
+            return new ColumnarDataSetFile( classNames, sampleCount, classLabels, columns );
+        }
+    }
+
+    public static void convert( File textFile, File columnarFile ) throws IOException {
+        DataSetReader dataSetReader = new DataSetReader();
+        dataSetReader.readDataSet( textFile );
+        write( columnarFile, dataSetReader.getClassNames(), dataSetReader.getSampleCount(), dataSetReader.getClassLabels(), dataSetReader.getFeatureMatrix() );
+    }
+
+    public static void write( File file, String[] classNames, int[] sampleCount, int[] classLabels, double[][] featureMatrix ) throws IOException {
+        int sampleTotal = classLabels.length;
+        byte[][] names = new byte[classNames.length][];
+        int headerSize = 20;
+        for ( int classIndex = 0; classIndex < classNames.length; classIndex++ ) {
+            names[classIndex] = classNames[classIndex].getBytes( StandardCharsets.UTF_8 );
+            headerSize += 8 + names[classIndex].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate( headerSize ).order( ByteOrder.LITTLE_ENDIAN );
+        header.putInt( MAGIC ).putInt( VERSION ).putInt( featureMatrix.length ).putInt( sampleTotal ).putInt( classNames.length );
+        for ( int classIndex = 0; classIndex < classNames.length; classIndex++ ) {
+            header.putInt( names[classIndex].length ).put( names[classIndex] ).putInt( sampleCount[classIndex] );
+        }
+        header.flip();
+
+        try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+              FileChannel channel = randomAccessFile.getChannel() ) {
+            channel.truncate( 0 );
+            writeFully( channel, header );
+            ByteBuffer chunk = ByteBuffer.allocate( WRITE_CHUNK_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            for ( int label : classLabels ) {
+                if ( chunk.remaining() < 4 ) {
+                    flushChunk( channel, chunk );
+                }
+                chunk.putInt( label );
+            }
+            if ( chunk.remaining() < 8 ) {
+                flushChunk( channel, chunk );
+            }
+            long padding = alignToDouble( headerSize + 4L * sampleTotal ) - ( headerSize + 4L * sampleTotal );
+            for ( int index = 0; index < padding; index++ ) {
+                chunk.put( (byte) 0 );
+            }
+            for ( double[] column : featureMatrix ) {
+                for ( double value : column ) {
+                    if ( chunk.remaining() < 8 ) {
+                        flushChunk( channel, chunk );
+                    }
+                    chunk.putDouble( value );
+                }
+            }
+            flushChunk( channel, chunk );
+        }
+    }
+
+    public String[] getClassNames() {
+        return classNames;
+    }
+
+    public int[] getSampleCount() {
+        return sampleCount;
+    }
+
+    public int[] getClassLabels() {
+        return classLabels;
+    }
+
+    public int getFeatureCount() {
+        return columns.length;
+    }
+
+    /**
+     * Zero-copy read-only view over one feature column.
+     */
+    public DoubleBuffer getColumn( int attributeIndex ) {
+        return columns[attributeIndex].duplicate();
+    }
+
+    /**
+     * Copies the mapped columns into a feature matrix (rows - features, columns - samples) for code that needs arrays.
+     */
+    public double[][] getFeatureMatrix() {
+        double[][] featureMatrix = new double[columns.length][classLabels.length];
+        for ( int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++ ) {
+            getColumn( attributeIndex ).get( featureMatrix[attributeIndex] );
+        }
+        return featureMatrix;
+    }
+
+    private static long alignToDouble( long position ) {
+        return ( position + 7 ) & ~7L;
+    }
+
+    private static void flushChunk( FileChannel channel, ByteBuffer chunk ) throws IOException {
+        chunk.flip();
+        writeFully( channel, chunk );
+        chunk.clear();
+    }
+
+    private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException {
+        while ( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+    }
+
+    /**
+     * Converts a text dataset into the columnar binary layout: ColumnarDataSetFile input.txt output.smpd
+     */
+    public static void main( String args[] ) throws IOException {
+        if ( args.length != 2 ) {
+            System.err.println( "Usage: ColumnarDataSetFile <input.txt> <output." + EXTENSION + ">" );
+            System.exit( 1 );
+        }
+        convert( new File( args[0] ), new File( args[1] ) );
+    }
+
+}
@@ -0,0 +1,112 @@
+package probesUtilities;
+
+import java.util.Arrays;
+
+/**
+ * Regularization of a covariance matrix estimated from few probes. With fewer probes than attributes (common for small
+ * clusters) the sample covariance is singular and its inverse only exists as a pseudoinverse; both shrinkages blend it
+ * with the scaled identity mu I, mu = trace / dimension, which makes it positive definite so MahalanobisDistance can
+ * always factor it by Cholesky, once.
+ * <ul>
+ * <li>DIAGONAL_LOADING adds DIAGONAL_LOADING_FRACTION * mu to the diagonal, whatever the probe count.</li>
+ * <li>LEDOIT_WOLF uses (1 - rho) C + rho mu I with the intensity rho of Ledoit and Wolf (2004), estimated from the
+ * probes: close to 1 for a few scattered probes, close to 0 for many.</li>
+ * </ul>
+ * Covariances with non-finite entries (a single probe) and all-zero ones are left alone by shrink, and replaced by a
+ * scaled identity built from a fallback variance (pooled from more probes) by shrinkOrReplace.
+ */
+public enum CovarianceShrinkage {
+
+    NONE,
+    DIAGONAL_LOADING,
+    LEDOIT_WOLF;
+
+    public static final double DIAGONAL_LOADING_FRACTION = 0.01;
+
+    /**
+     * Regularizes a covariance matrix in place.
+     *
+     * @param covariance unbiased estimate, the scatter of the probes around their mean over (countOfProbes - 1)
+     * @param countOfProbes number of probes the covariance was estimated from, duplicates included
+     * @param sumOfFourthPowersOfDeviations sum over the probes of |probe - mean|^4; only LEDOIT_WOLF uses it
+     * @return weight rho of the scaled identity in the result, 0 when nothing changed
+     */
+    public double shrink( double[][] covariance, int countOfProbes, double sumOfFourthPowersOfDeviations ) {
+        if ( this == NONE ) {
+            return 0.0;
+        }
+        int dimension = covariance.length;
+        double trace = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            trace += covariance[attributeIndex][attributeIndex];
+        }
+        if ( !( trace > 0.0 ) || Double.isInfinite( trace ) ) {
+            return 0.0;
+        }
+        double meanVariance = trace / dimension;
+        if ( this == DIAGONAL_LOADING ) {
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                covariance[attributeIndex][attributeIndex] += DIAGONAL_LOADING_FRACTION * meanVariance;
+            }
+            return DIAGONAL_LOADING_FRACTION / ( 1.0 + DIAGONAL_LOADING_FRACTION );
+        }
+        double intensity = estimateLedoitWolfIntensity( covariance, meanVariance, countOfProbes, sumOfFourthPowersOfDeviations );
+        for ( int firstAttributeIndex = 0; firstAttributeIndex < dimension; firstAttributeIndex++ ) {
+            for ( int secondAttributeIndex = 0; secondAttributeIndex < dimension; secondAttributeIndex++ ) {
+                covariance[firstAttributeIndex][secondAttributeIndex] *= 1.0 - intensity;
+            }
+            covariance[firstAttributeIndex][firstAttributeIndex] += intensity * meanVariance;
+        }
+        return intensity;
+    }
+
+    /**
+     * Like shrink, but a covariance of fewer than two probes, or one with a non-finite or zero trace, is replaced by
+     * fallbackVariance * I - the most a shrinkage can do. Whatever the shrinkage, the result is then positive definite
+     * for a positive fallback variance.
+     *
+     * @param fallbackVariance variance per attribute to use when the covariance says nothing, typically pooled over
+     * many clusters
+     * @return weight rho of the scaled identity in the result, 1 when replaced
+     */
+    public double shrinkOrReplace( double[][] covariance, int countOfProbes, double sumOfFourthPowersOfDeviations, double fallbackVariance ) {
+        double trace = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < covariance.length; attributeIndex++ ) {
+            trace += covariance[attributeIndex][attributeIndex];
+        }
+        if ( countOfProbes >= 2 && trace > 0.0 && !Double.isInfinite( trace ) ) {
+            return shrink( covariance, countOfProbes, sumOfFourthPowersOfDeviations );
+        }
+        for ( int firstAttributeIndex = 0; firstAttributeIndex < covariance.length; firstAttributeIndex++ ) {
+            Arrays.fill( covariance[firstAttributeIndex], 0.0 );
+            covariance[firstAttributeIndex][firstAttributeIndex] = fallbackVariance;
+        }
+        return 1.0;
+    }
+
+    /**
+     * rho = min(b^2, d^2) / d^2 over the maximum likelihood covariance S = C (n - 1) / n, where d^2 = |S - mu I|^2 is
+     * the distance to the target and b^2 = sum_k |x_k x_k^T - S|^2 / n^2 the estimation error of S. Since S is the mean
+     * of the x_k x_k^T, the sum reduces to sum_k |x_k|^4 - n |S|^2 (Frobenius norms, x_k centered), so b^2 needs no
+     * second pass over the probes.
+     */
+    private static double estimateLedoitWolfIntensity( double[][] covariance, double meanVariance, int countOfProbes, double sumOfFourthPowersOfDeviations ) {
+        double scale = ( countOfProbes - 1.0 ) / countOfProbes;
+        double squaredNorm = 0.0;
+        double squaredDistanceToTarget = 0.0;
+        for ( int firstAttributeIndex = 0; firstAttributeIndex < covariance.length; firstAttributeIndex++ ) {
+            for ( int secondAttributeIndex = 0; secondAttributeIndex < covariance.length; secondAttributeIndex++ ) {
+                double value = scale * covariance[firstAttributeIndex][secondAttributeIndex];
+                squaredNorm += value * value;
+                double deviation = firstAttributeIndex == secondAttributeIndex ? value - scale * meanVariance : value;
+                squaredDistanceToTarget += deviation * deviation;
+            }
+        }
+        if ( !( squaredDistanceToTarget > 0.0 ) ) {
+            return 0.0; // already a multiple of the identity
+        }
+        double estimationError = Math.max( 0.0, sumOfFourthPowersOfDeviations - countOfProbes * squaredNorm ) / ( (double) countOfProbes * countOfProbes );
+        return Math.min( estimationError, squaredDistanceToTarget ) / squaredDistanceToTarget;
+    }
+
+}
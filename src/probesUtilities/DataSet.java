@@ -0,0 +1,116 @@
+package probesUtilities;
+
+import java.nio.DoubleBuffer;
+import java.util.Set;
+
+/**
+ * Whole dataset kept in one flat row-major array (probe after probe), so training and test sets can be described by
+ * probe indexes only instead of copies of the data.
+ */
+public class DataSet {
+
+    /**
+     * Largest array length every JVM allocates; with values no longer than this, every probeIndex * featureCount +
+     * attributeIndex offset into the flat store, here and in the classifiers, fits in an int.
+     */
+    private static final int MAXIMUM_VALUE_COUNT = Integer.MAX_VALUE - 8;
+
+    private final double[] values;
+    private final int featureCount;
+    private final int sampleCount;
+    private final int[] classLabels;
+    private final String[] classNames;
+
+    /**
+     * @param featureMatrix rows - features, columns - samples, as filled by DataSetReader
+     */
+    public DataSet( double[][] featureMatrix, int[] classLabels, String[] classNames ) {
+        this.featureCount = featureMatrix.length;
+        this.sampleCount = classLabels.length;
+        this.classLabels = classLabels;
+        this.classNames = classNames;
+        this.values = allocateValues( featureCount, sampleCount );
+        for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+            double[] attributeValues = featureMatrix[attributeIndex];
+            for ( int probeIndex = 0; probeIndex < sampleCount; probeIndex++ ) {
+                values[probeIndex * featureCount + attributeIndex] = attributeValues[probeIndex];
+            }
+        }
+    }
+
+    /**
+     * Transposes the memory-mapped columns straight into the flat store, without an intermediate feature matrix.
+     */
+    public DataSet( ColumnarDataSetFile columnarDataSetFile ) {
+        this.featureCount = columnarDataSetFile.getFeatureCount();
+        this.classLabels = columnarDataSetFile.getClassLabels();
+        this.sampleCount = classLabels.length;
+        this.classNames = columnarDataSetFile.getClassNames();
+        this.values = allocateValues( featureCount, sampleCount );
+        for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+            DoubleBuffer column = columnarDataSetFile.getColumn( attributeIndex );
+            for ( int probeIndex = 0; probeIndex < sampleCount; probeIndex++ ) {
+                values[probeIndex * featureCount + attributeIndex] = column.get( probeIndex );
+            }
+        }
+    }
+
+    private static double[] allocateValues( int featureCount, int sampleCount ) {
+        long valueCount = Math.multiplyExact( (long) featureCount, (long) sampleCount );
+        if ( valueCount > MAXIMUM_VALUE_COUNT ) {
+            throw new IllegalArgumentException( "Dataset of " + sampleCount + " samples x " + featureCount + " features has "
+                                                + valueCount + " values, more than the " + MAXIMUM_VALUE_COUNT + " one array can hold" );
+        }
+        return new double[(int) valueCount];
+    }
+
+    public double getValue( int probeIndex, int attributeIndex ) {
+        return values[probeIndex * featureCount + attributeIndex];
+    }
+
+    /**
+     * Direct access to the flat store; probe p starts at p * getFeatureCount().
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getClassLabel( int probeIndex ) {
+        return classLabels[probeIndex];
+    }
+
+    public int[] getClassLabels() {
+        return classLabels;
+    }
+
+    public int getClassCount() {
+        return classNames.length;
+    }
+
+    public String[] getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * Resolves selected attribute indexes to an ascending array; an empty selection means all attributes.
+     */
+    public int[] resolveAttributes( Set<Integer> indexesOfBestAttributes ) {
+        if ( indexesOfBestAttributes == null || indexesOfBestAttributes.isEmpty() ) {
+            int[] attributes = new int[featureCount];
+            for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+                attributes[attributeIndex] = attributeIndex;
+            }
+            return attributes;
+        }
+        return indexesOfBestAttributes.stream().mapToInt( Integer::intValue ).sorted().toArray();
+    }
+
+}
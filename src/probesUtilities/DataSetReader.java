@@ -0,0 +1,299 @@
+package probesUtilities;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a dataset in the text layout used by the GUI ("ClassName rest,f1,f2,...,fn" per line) in a single streaming
+ * pass. Class label and numeric fields are split directly on the byte stream, so no String is created per row or per
+ * field - only one per distinct class name.
+ */
+public class DataSetReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INITIAL_SAMPLE_CAPACITY = 1024;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private double[][] featureMatrix;
+    private String[] classNames;
+    private int[] sampleCount;
+    private int[] classLabels;
+    private int featureCount;
+
+    private final List<byte[]> classNamesAsBytes = new ArrayList<>();
+    private byte[] field = new byte[64];
+    private int fieldLength;
+    private double[] row = new double[64];
+    private int rowLength;
+    private int samplesRead;
+    private int lineNumber;
+
+    public void readDataSet( File file ) throws IOException {
+        try ( InputStream inputStream = new FileInputStream( file ) ) {
+            readDataSet( inputStream );
+        }
+    }
+
+    public void readDataSet( InputStream inputStream ) throws IOException {
+        reset();
+        InputStream bufferedStream = new BufferedInputStream( inputStream, BUFFER_SIZE );
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] label = new byte[64];
+        int labelLength = 0;
+        // 0 - reading class label, 1 - skipping rest of the label up to the first comma, 2 - reading numeric fields
+        int state = 0;
+        int read;
+        while ( ( read = bufferedStream.read( buffer ) ) != -1 ) {
+            for ( int index = 0; index < read; index++ ) {
+                byte character = buffer[index];
+                if ( character == '\r' ) {
+                    continue;
+                }
+                if ( character == '\n' ) {
+                    lineNumber++;
+                    if ( state == 2 ) {
+                        finishField();
+                        finishRow( label, labelLength );
+                    } else if ( labelLength > 0 ) {
+                        throw new IOException( "Line " + lineNumber + " has no features" );
+                    }
+                    labelLength = 0;
+                    state = 0;
+                    continue;
+                }
+                switch ( state ) {
+                    case 0:
+                        if ( character == ' ' || character == ',' ) {
+                            state = character == ',' ? 2 : 1;
+                        } else {
+                            if ( labelLength == label.length ) {
+                                label = Arrays.copyOf( label, labelLength * 2 );
+                            }
+                            label[labelLength++] = character;
+                        }
+                        break;
+                    case 1:
+                        if ( character == ',' ) {
+                            state = 2;
+                        }
+                        break;
+                    default:
+                        if ( character == ',' ) {
+                            finishField();
+                        } else if ( character != ' ' && character != '\t' ) {
+                            if ( fieldLength == field.length ) {
+                                field = Arrays.copyOf( field, fieldLength * 2 );
+                            }
+                            field[fieldLength++] = character;
+                        }
+                        break;
+                }
+            }
+        }
+        lineNumber++;
+        if ( state == 2 ) {
+            finishField();
+            finishRow( label, labelLength );
+        } else if ( labelLength > 0 ) {
+            throw new IOException( "Line " + lineNumber + " has no features" );
+        }
+        if ( samplesRead == 0 ) {
+            throw new IOException( "no samples found" );
+        }
+        buildResult();
+    }
+
+    public double[][] getFeatureMatrix() {
+        return featureMatrix;
+    }
+
+    public String[] getClassNames() {
+        return classNames;
+    }
+
+    public int[] getSampleCount() {
+        return sampleCount;
+    }
+
+    public int[] getClassLabels() {
+        return classLabels;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    private void reset() {
+        featureMatrix = null;
+        classLabels = new int[INITIAL_SAMPLE_CAPACITY];
+        classNamesAsBytes.clear();
+        featureCount = 0;
+        fieldLength = 0;
+        rowLength = 0;
+        samplesRead = 0;
+        lineNumber = 0;
+    }
+
+    private void finishField() throws IOException {
+        if ( rowLength == row.length ) {
+            row = Arrays.copyOf( row, rowLength * 2 );
+        }
+        row[rowLength++] = parseField();
+        fieldLength = 0;
+    }
+
+    private void finishRow( byte[] label, int labelLength ) throws IOException {
+        if ( featureMatrix == null ) {
+            featureCount = rowLength;
+            featureMatrix = new double[featureCount][INITIAL_SAMPLE_CAPACITY];
+        } else if ( rowLength != featureCount ) {
+            throw new IOException( "Line " + lineNumber + " has " + rowLength + " features, expected " + featureCount );
+        }
+        if ( samplesRead == classLabels.length ) {
+            int newCapacity = samplesRead * 2;
+            classLabels = Arrays.copyOf( classLabels, newCapacity );
+            for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+                featureMatrix[attributeIndex] = Arrays.copyOf( featureMatrix[attributeIndex], newCapacity );
+            }
+        }
+        for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+            featureMatrix[attributeIndex][samplesRead] = row[attributeIndex];
+        }
+        classLabels[samplesRead] = findClassIndex( label, labelLength );
+        samplesRead++;
+        rowLength = 0;
+    }
+
+    private int findClassIndex( byte[] label, int labelLength ) {
+        for ( int classIndex = 0; classIndex < classNamesAsBytes.size(); classIndex++ ) {
+            byte[] className = classNamesAsBytes.get( classIndex );
+            if ( className.length == labelLength && equalBytes( className, label, labelLength ) ) {
+                return classIndex;
+            }
+        }
+        classNamesAsBytes.add( Arrays.copyOf( label, labelLength ) );
+        return classNamesAsBytes.size() - 1;
+    }
+
+    private boolean equalBytes( byte[] first, byte[] second, int length ) {
+        for ( int index = 0; index < length; index++ ) {
+            if ( first[index] != second[index] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildResult() {
+        for ( int attributeIndex = 0; attributeIndex < featureCount; attributeIndex++ ) {
+            featureMatrix[attributeIndex] = Arrays.copyOf( featureMatrix[attributeIndex], samplesRead );
+        }
+        classLabels = Arrays.copyOf( classLabels, samplesRead );
+        classNames = new String[classNamesAsBytes.size()];
+        for ( int classIndex = 0; classIndex < classNames.length; classIndex++ ) {
+            classNames[classIndex] = new String( classNamesAsBytes.get( classIndex ), StandardCharsets.UTF_8 );
+        }
+        sampleCount = new int[classNames.length];
+        for ( int probeIndex = 0; probeIndex < samplesRead; probeIndex++ ) {
+            sampleCount[classLabels[probeIndex]]++;
+        }
+    }
+
+    /**
+     * Parses plain decimal numbers (optional sign, fraction and exponent) without creating a String. Values whose
+     * mantissa and exponent are small enough are converted exactly by a single multiplication or division, anything
+     * else falls back to Double.parseDouble.
+     */
+    private double parseField() throws IOException {
+        if ( fieldLength == 0 ) {
+            throw new IOException( "Line " + lineNumber + " has an empty feature value" );
+        }
+        int index = 0;
+        boolean negative = false;
+        if ( field[0] == '-' || field[0] == '+' ) {
+            negative = field[0] == '-';
+            index++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        for ( ; index < fieldLength; index++ ) {
+            byte character = field[index];
+            if ( character >= '0' && character <= '9' ) {
+                int digit = character - '0';
+                if ( mantissa <= ( MAX_EXACT_MANTISSA - digit ) / 10 ) { // keeps mantissa * 10 + digit within 2^53
+                    mantissa = mantissa * 10 + digit;
+                    if ( fraction ) {
+                        exponent--;
+                    }
+                } else {
+                    exact = false;
+                }
+                digits++;
+            } else if ( character == '.' && !fraction ) {
+                fraction = true;
+            } else if ( ( character == 'e' || character == 'E' ) && digits > 0 ) {
+                int exponentPart = parseExponent( index + 1 );
+                if ( exponentPart == Integer.MIN_VALUE ) {
+                    return fallbackParse();
+                }
+                exponent += exponentPart;
+                index = fieldLength;
+                break;
+            } else {
+                return fallbackParse();
+            }
+        }
+        if ( digits == 0 ) {
+            return fallbackParse();
+        }
+        if ( !exact || exponent < -22 || exponent > 22 ) {
+            return fallbackParse();
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private int parseExponent( int start ) {
+        int index = start;
+        boolean negative = false;
+        if ( index < fieldLength && ( field[index] == '-' || field[index] == '+' ) ) {
+            negative = field[index] == '-';
+            index++;
+        }
+        if ( index == fieldLength || fieldLength - index > 4 ) {
+            return Integer.MIN_VALUE;
+        }
+        int exponent = 0;
+        for ( ; index < fieldLength; index++ ) {
+            if ( field[index] < '0' || field[index] > '9' ) {
+                return Integer.MIN_VALUE;
+            }
+            exponent = exponent * 10 + ( field[index] - '0' );
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    private double fallbackParse() throws IOException {
+        String value = new String( field, 0, fieldLength, StandardCharsets.US_ASCII );
+        try {
+            return Double.parseDouble( value );
+        } catch ( NumberFormatException e ) {
+            throw new IOException( "Line " + lineNumber + " has invalid feature value: " + value );
+        }
+    }
+
+}
@@ -68,6 +68,56 @@ public class FeatureSelector {
         return bestFeatureIndexes.stream().collect( Collectors.toSet() );
     }
 
+    /**
+     * Fisher score of every attribute on the training probes of a fold, for any number of classes: variance of the
+     * class means around the overall mean divided by the mean variance within the classes, both weighted by the class
+     * sizes. Training weights count as multiplicities.
+     *
+     * @return score of attributes[i] at index i
+     */
+    public double[] getFisherScores( FoldView fold, int[] attributes ) {
+        DataSet dataSet = fold.getDataSet();
+        int[] trainingIndexes = fold.getTrainingIndexes();
+        double[][] sumPerClass = new double[dataSet.getClassCount()][attributes.length];
+        double[][] sumOfSquaresPerClass = new double[dataSet.getClassCount()][attributes.length];
+        int[] countPerClass = new int[dataSet.getClassCount()];
+        int countOfProbes = 0;
+        for ( int trainingPosition = 0; trainingPosition < trainingIndexes.length; trainingPosition++ ) {
+            int probeIndex = trainingIndexes[trainingPosition];
+            int weight = fold.getTrainingWeight( trainingPosition );
+            int classIndex = dataSet.getClassLabel( probeIndex );
+            countPerClass[classIndex] += weight;
+            countOfProbes += weight;
+            for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+                double value = dataSet.getValue( probeIndex, attributes[attributeIndex] );
+                sumPerClass[classIndex][attributeIndex] += weight * value;
+                sumOfSquaresPerClass[classIndex][attributeIndex] += weight * value * value;
+            }
+        }
+
+        double[] fisherScores = new double[attributes.length];
+        for ( int attributeIndex = 0; attributeIndex < attributes.length; attributeIndex++ ) {
+            double overallSum = 0.0;
+            for ( int classIndex = 0; classIndex < countPerClass.length; classIndex++ ) {
+                overallSum += sumPerClass[classIndex][attributeIndex];
+            }
+            double overallMean = overallSum / countOfProbes;
+            double betweenClassVariance = 0.0;
+            double withinClassVariance = 0.0;
+            for ( int classIndex = 0; classIndex < countPerClass.length; classIndex++ ) {
+                if ( countPerClass[classIndex] == 0 ) {
+                    continue;
+                }
+                double classMean = sumPerClass[classIndex][attributeIndex] / countPerClass[classIndex];
+                betweenClassVariance += countPerClass[classIndex] * ( classMean - overallMean ) * ( classMean - overallMean );
+                withinClassVariance += Math.max( 0.0, sumOfSquaresPerClass[classIndex][attributeIndex] - countPerClass[classIndex] * classMean * classMean );
+            }
+            fisherScores[attributeIndex] = withinClassVariance > 0.0 ? betweenClassVariance / withinClassVariance
+                                           : betweenClassVariance > 0.0 ? Double.POSITIVE_INFINITY : 0.0;
+        }
+        return fisherScores;
+    }
+
     private Set<Integer> findBestAttributes( int numberOfAttributes, Map<String, double[][]> probesGroupedByClass )
             throws TooManyDimensionException {
         double[][] combinedProbes = combineProbesToOneMatrix( probesGroupedByClass );
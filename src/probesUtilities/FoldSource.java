@@ -0,0 +1,55 @@
+package probesUtilities;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * Lazy sequence of folds. A fold is built only when it is requested and is not kept afterwards, so evaluating folds
+ * one by one (or a few at a time in parallel) never holds all of them in memory. Building the same fold index twice
+ * gives the same fold.
+ */
+public class FoldSource implements Iterable<FoldView> {
+
+    private final int size;
+    private final IntFunction<FoldView> foldFactory;
+
+    public FoldSource( int size, IntFunction<FoldView> foldFactory ) {
+        this.size = size;
+        this.foldFactory = foldFactory;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public FoldView createFold( int foldIndex ) {
+        if ( foldIndex < 0 || foldIndex >= size ) {
+            throw new IndexOutOfBoundsException( "Fold " + foldIndex + " of " + size );
+        }
+        return foldFactory.apply( foldIndex );
+    }
+
+    @Override
+    public Iterator<FoldView> iterator() {
+        return new Iterator<FoldView>() {
+
+            private int nextFoldIndex;
+
+            @Override
+            public boolean hasNext() {
+                return nextFoldIndex < size;
+            }
+
+            @Override
+            public FoldView next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return createFold( nextFoldIndex++ );
+            }
+
+        };
+    }
+
+}
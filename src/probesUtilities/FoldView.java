@@ -0,0 +1,51 @@
+package probesUtilities;
+
+/**
+ * One training/test split of a DataSet described only by probe indexes; the data itself is never copied. A training
+ * probe may carry a weight - its multiplicity in a bootstrap sample - instead of being repeated.
+ */
+public class FoldView {
+
+    private final DataSet dataSet;
+    private final int[] trainingIndexes;
+    private final int[] trainingWeights;
+    private final int[] testIndexes;
+
+    public FoldView( DataSet dataSet, int[] trainingIndexes, int[] testIndexes ) {
+        this( dataSet, trainingIndexes, null, testIndexes );
+    }
+
+    /**
+     * @param trainingWeights multiplicity of every training probe, parallel to trainingIndexes; null means all ones
+     */
+    public FoldView( DataSet dataSet, int[] trainingIndexes, int[] trainingWeights, int[] testIndexes ) {
+        this.dataSet = dataSet;
+        this.trainingIndexes = trainingIndexes;
+        this.trainingWeights = trainingWeights;
+        this.testIndexes = testIndexes;
+    }
+
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    public int[] getTrainingIndexes() {
+        return trainingIndexes;
+    }
+
+    /**
+     * Multiplicity of the training probe stored at the given position of getTrainingIndexes().
+     */
+    public int getTrainingWeight( int trainingPosition ) {
+        return trainingWeights == null ? 1 : trainingWeights[trainingPosition];
+    }
+
+    public boolean isWeighted() {
+        return trainingWeights != null;
+    }
+
+    public int[] getTestIndexes() {
+        return testIndexes;
+    }
+
+}
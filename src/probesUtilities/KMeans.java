@@ -0,0 +1,515 @@
+package probesUtilities;
+
+import exceptions.EmptyClusterException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Lloyd's k-means over row-packed probes (probe i at i * dimension) with k-means++ seeding and triangle inequality
+ * pruning, which gives the same iterations as plain Lloyd (up to ties) while skipping most probe-to-centroid distances:
+ * <ul>
+ * <li>Hamerly, up to MAXIMUM_HAMERLY_CLUSTER_COUNT clusters: every probe keeps an upper bound on the distance to its
+ * centroid and one lower bound on the distance to every other centroid; the probe is only looked at again when the
+ * bounds, moved by how far the centroids moved, no longer prove its centroid is the closest.</li>
+ * <li>Elkan, above that: one lower bound per probe and centroid plus the centroid-to-centroid distances, so even a
+ * probe that must be looked at skips the centroids that cannot be closer.</li>
+ * </ul>
+ * Iterations stop when no centroid moves more than the given dislocation, or after maximumIterations centroid updates.
+ * A last pruned pass assigns the probes to the final centroids and measures the clustering error on the way. A cluster
+ * that loses all its probes ends the run with EmptyClusterException.
+ * <p>
+ * With a batch size (see the second constructor) the iterations are mini-batches instead (Sculley 2010): every
+ * iteration draws batchSize random probes, assigns them to their closest centroid and pulls each centroid towards its
+ * probes with a learning rate of 1 / (probes it has been pulled by so far). An iteration then costs batchSize instead of
+ * all probes, at the price of a somewhat larger error. Mini-batches stop after maximumIterations batches, or once
+ * MINI_BATCH_PATIENCE batches in a row moved no centroid more than the given dislocation; the last assignment pass is
+ * exact as in full batch mode.
+ * <p>
+ * All buffers are allocated once per run; the iterations allocate nothing. Sparse probes (see SparseProbes) are
+ * compared with the centroids through their non-zeros only.
+ */
+public class KMeans {
+
+    public static final int MAXIMUM_HAMERLY_CLUSTER_COUNT = 8;
+    public static final int MINI_BATCH_PATIENCE = 10;
+
+    private final double[] probes;
+    private final int dimension;
+    private final int probeCount;
+    private final Random random;
+    private final int maximumIterations;
+    private final double maximumCentroidDislocation;
+    private final int batchSize;
+    private final SparseProbes sparseProbes;
+
+    private int clusterCount;
+    private double[] centroids;
+    private double[] previousCentroids;
+    private double[] centroidSquaredNorms;
+    private int[] assignment;
+    private int[] batchProbes;
+    private int[] batchAssignment;
+    private int[] countOfProbesPerCluster;
+    private double[] centroidDislocations;
+    private double[] distanceSumsPerCluster;
+    private double[] upperBounds;
+    /**
+     * Hamerly: one bound per probe; Elkan: bound of probe i to centroid j at i * clusterCount + j.
+     */
+    private double[] lowerBounds;
+    private double[] centroidDistances;
+    private double[] halfDistancesToClosestCentroid;
+    private int iterationCount;
+    private long computedDistanceCount;
+    private double error;
+
+    public KMeans( double[] probes, int dimension, Random random, int maximumIterations, double maximumCentroidDislocation ) {
+        this( probes, dimension, random, maximumIterations, maximumCentroidDislocation, 0 );
+    }
+
+    /**
+     * @param batchSize probes per mini-batch; 0, or at least the probe count, for full batch iterations
+     */
+    public KMeans( double[] probes, int dimension, Random random, int maximumIterations, double maximumCentroidDislocation, int batchSize ) {
+        this.probes = probes;
+        this.dimension = dimension;
+        this.probeCount = dimension == 0 ? 0 : probes.length / dimension;
+        this.random = random;
+        this.maximumIterations = maximumIterations;
+        this.maximumCentroidDislocation = maximumCentroidDislocation;
+        this.batchSize = batchSize > 0 && batchSize < probeCount ? batchSize : 0;
+        sparseProbes = SparseProbes.createIfSparse( probes, dimension );
+    }
+
+    /**
+     * @return clusterCount centroids, centroid j at j * dimension
+     */
+    public double[] findCentroids( int clusterCount ) {
+        this.clusterCount = clusterCount;
+        computedDistanceCount = 0;
+        iterationCount = 0;
+        centroids = new double[clusterCount * dimension];
+        previousCentroids = new double[clusterCount * dimension];
+        centroidSquaredNorms = new double[clusterCount];
+        assignment = new int[probeCount];
+        batchProbes = new int[batchSize];
+        batchAssignment = new int[batchSize];
+        countOfProbesPerCluster = new int[clusterCount];
+        centroidDislocations = new double[clusterCount];
+        distanceSumsPerCluster = new double[clusterCount];
+        upperBounds = new double[probeCount];
+        boolean elkan = batchSize == 0 && clusterCount > MAXIMUM_HAMERLY_CLUSTER_COUNT;
+        lowerBounds = new double[elkan ? probeCount * clusterCount : probeCount];
+        centroidDistances = new double[clusterCount * clusterCount];
+        halfDistancesToClosestCentroid = new double[clusterCount];
+
+        seedCentroids();
+        if ( batchSize > 0 ) {
+            runMiniBatches();
+            assignAllProbes( false );
+            measureError();
+            return centroids;
+        }
+        assignAllProbes( elkan );
+        while ( true ) {
+            iterationCount++;
+            double largestDislocation = moveCentroids();
+            if ( largestDislocation <= maximumCentroidDislocation || iterationCount >= maximumIterations ) {
+                break;
+            }
+            calculateCentroidDistances();
+            if ( elkan ) {
+                reassignProbesElkan( false );
+            } else {
+                reassignProbesHamerly( false );
+            }
+        }
+        assignProbesToFinalCentroids( elkan );
+        return centroids;
+    }
+
+    /**
+     * Cluster of every probe, closest of the returned centroids.
+     */
+    public int[] getAssignment() {
+        return assignment;
+    }
+
+    /**
+     * Mean over the clusters of the mean distance of their probes to their centroid, as ClusterFinder compares cluster
+     * counts.
+     */
+    public double getError() {
+        return error;
+    }
+
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * Probe-to-centroid distances computed by the last run over the probeCount * clusterCount of each of the
+     * iterationCount + 1 assignment passes plain Lloyd would compute (seeding excluded); meant for full batch runs.
+     */
+    public double getComputedDistanceFraction() {
+        long lloydDistanceCount = ( iterationCount + 1L ) * probeCount * clusterCount;
+        return lloydDistanceCount == 0 ? 1.0 : (double) computedDistanceCount / lloydDistanceCount;
+    }
+
+    /**
+     * k-means++: the first centroid is a random probe, every next one a probe drawn with probability proportional to
+     * its squared distance to the closest centroid chosen so far.
+     */
+    private void seedCentroids() {
+        double[] squaredDistancesToClosestCentroid = new double[probeCount];
+        Arrays.fill( squaredDistancesToClosestCentroid, Double.POSITIVE_INFINITY );
+        int chosenProbe = random.nextInt( probeCount );
+        for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+            System.arraycopy( probes, chosenProbe * dimension, centroids, cluster * dimension, dimension );
+            centroidSquaredNorms[cluster] = calculateSquaredNorm( cluster );
+            if ( cluster == clusterCount - 1 ) {
+                break;
+            }
+            double totalSquaredDistance = 0.0;
+            for ( int probe = 0; probe < probeCount; probe++ ) {
+                double squaredDistance = squaredDistance( probe, cluster );
+                if ( squaredDistance < squaredDistancesToClosestCentroid[probe] ) {
+                    squaredDistancesToClosestCentroid[probe] = squaredDistance;
+                }
+                totalSquaredDistance += squaredDistancesToClosestCentroid[probe];
+            }
+            if ( !( totalSquaredDistance > 0.0 ) ) {
+                throw new EmptyClusterException(); // fewer distinct probes than clusters
+            }
+            double threshold = random.nextDouble() * totalSquaredDistance;
+            chosenProbe = -1;
+            for ( int probe = 0; probe < probeCount && threshold >= 0.0; probe++ ) {
+                if ( squaredDistancesToClosestCentroid[probe] > 0.0 ) {
+                    chosenProbe = probe;
+                    threshold -= squaredDistancesToClosestCentroid[probe];
+                }
+            }
+        }
+    }
+
+    /**
+     * Exact assignment of every probe, which also initializes the bounds.
+     */
+    private void assignAllProbes( boolean elkan ) {
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            double smallestDistance = Double.POSITIVE_INFINITY;
+            double secondSmallestDistance = Double.POSITIVE_INFINITY;
+            int closestCluster = 0;
+            for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                double distance = distance( probe, cluster );
+                if ( elkan ) {
+                    lowerBounds[probe * clusterCount + cluster] = distance;
+                }
+                if ( distance < smallestDistance ) {
+                    secondSmallestDistance = smallestDistance;
+                    smallestDistance = distance;
+                    closestCluster = cluster;
+                } else if ( distance < secondSmallestDistance ) {
+                    secondSmallestDistance = distance;
+                }
+            }
+            assignment[probe] = closestCluster;
+            upperBounds[probe] = smallestDistance;
+            if ( !elkan ) {
+                lowerBounds[probe] = secondSmallestDistance;
+            }
+        }
+    }
+
+    /**
+     * Moves every centroid to the mean of its probes and loosens the bounds by the moves.
+     *
+     * @return largest centroid dislocation
+     */
+    private double moveCentroids() {
+        double[] swap = previousCentroids;
+        previousCentroids = centroids;
+        centroids = swap;
+        Arrays.fill( centroids, 0.0 );
+        Arrays.fill( countOfProbesPerCluster, 0 );
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            int centroidOffset = assignment[probe] * dimension;
+            int probeOffset = probe * dimension;
+            countOfProbesPerCluster[assignment[probe]]++;
+            for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                centroids[centroidOffset + attributeIndex] += probes[probeOffset + attributeIndex];
+            }
+        }
+        double largestDislocation = 0.0;
+        double secondLargestDislocation = 0.0;
+        int mostDislocatedCluster = -1;
+        for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+            if ( countOfProbesPerCluster[cluster] == 0 ) {
+                throw new EmptyClusterException();
+            }
+            double squaredDislocation = 0.0;
+            for ( int attributeIndex = cluster * dimension; attributeIndex < ( cluster + 1 ) * dimension; attributeIndex++ ) {
+                centroids[attributeIndex] /= countOfProbesPerCluster[cluster];
+                double difference = centroids[attributeIndex] - previousCentroids[attributeIndex];
+                squaredDislocation += difference * difference;
+            }
+            centroidDislocations[cluster] = Math.sqrt( squaredDislocation );
+            centroidSquaredNorms[cluster] = calculateSquaredNorm( cluster );
+            if ( centroidDislocations[cluster] > largestDislocation ) {
+                secondLargestDislocation = largestDislocation;
+                largestDislocation = centroidDislocations[cluster];
+                mostDislocatedCluster = cluster;
+            } else if ( centroidDislocations[cluster] > secondLargestDislocation ) {
+                secondLargestDislocation = centroidDislocations[cluster];
+            }
+        }
+        boolean elkan = clusterCount > MAXIMUM_HAMERLY_CLUSTER_COUNT;
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            upperBounds[probe] += centroidDislocations[assignment[probe]];
+            if ( elkan ) {
+                for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                    lowerBounds[probe * clusterCount + cluster] = Math.max( 0.0, lowerBounds[probe * clusterCount + cluster] - centroidDislocations[cluster] );
+                }
+            } else {
+                // the other centroids moved at most the largest dislocation among them
+                lowerBounds[probe] -= assignment[probe] == mostDislocatedCluster ? secondLargestDislocation : largestDislocation;
+            }
+        }
+        return largestDislocation;
+    }
+
+    /**
+     * Mini-batch iterations from the seeded centroids; countOfProbesPerCluster counts the probes every centroid has been
+     * pulled by.
+     */
+    private void runMiniBatches() {
+        int quietBatchCount = 0;
+        while ( quietBatchCount < MINI_BATCH_PATIENCE && iterationCount < maximumIterations ) {
+            iterationCount++;
+            System.arraycopy( centroids, 0, previousCentroids, 0, centroids.length );
+            for ( int batchPosition = 0; batchPosition < batchSize; batchPosition++ ) {
+                int probe = random.nextInt( probeCount );
+                batchProbes[batchPosition] = probe;
+                double smallestDistance = Double.POSITIVE_INFINITY;
+                for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                    computedDistanceCount++;
+                    double squaredDistance = squaredDistance( probe, cluster );
+                    if ( squaredDistance < smallestDistance ) {
+                        smallestDistance = squaredDistance;
+                        batchAssignment[batchPosition] = cluster;
+                    }
+                }
+            }
+            for ( int batchPosition = 0; batchPosition < batchSize; batchPosition++ ) {
+                int cluster = batchAssignment[batchPosition];
+                int probeOffset = batchProbes[batchPosition] * dimension;
+                double learningRate = 1.0 / ++countOfProbesPerCluster[cluster];
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    centroids[cluster * dimension + attributeIndex] += learningRate * ( probes[probeOffset + attributeIndex] - centroids[cluster * dimension + attributeIndex] );
+                }
+            }
+            double largestDislocation = 0.0;
+            for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                double squaredDislocation = 0.0;
+                for ( int attributeIndex = cluster * dimension; attributeIndex < ( cluster + 1 ) * dimension; attributeIndex++ ) {
+                    double difference = centroids[attributeIndex] - previousCentroids[attributeIndex];
+                    squaredDislocation += difference * difference;
+                }
+                largestDislocation = Math.max( largestDislocation, Math.sqrt( squaredDislocation ) );
+                centroidSquaredNorms[cluster] = calculateSquaredNorm( cluster );
+            }
+            quietBatchCount = largestDislocation <= maximumCentroidDislocation ? quietBatchCount + 1 : 0;
+        }
+    }
+
+    /**
+     * Error (see getError) of other centroids over the probes of this instance, each probe counted in its closest
+     * cluster; clusters without probes are left out of the mean.
+     *
+     * @param otherCentroids clusterCount centroids, centroid j at j * dimension
+     */
+    public double measureError( double[] otherCentroids, int clusterCount ) {
+        double[] distanceSums = new double[clusterCount];
+        int[] probeCounts = new int[clusterCount];
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            double smallestSquaredDistance = Double.POSITIVE_INFINITY;
+            int closestCluster = 0;
+            for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                double squaredDistance = 0.0;
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    double difference = probes[probe * dimension + attributeIndex] - otherCentroids[cluster * dimension + attributeIndex];
+                    squaredDistance += difference * difference;
+                }
+                if ( squaredDistance < smallestSquaredDistance ) {
+                    smallestSquaredDistance = squaredDistance;
+                    closestCluster = cluster;
+                }
+            }
+            distanceSums[closestCluster] += Math.sqrt( smallestSquaredDistance );
+            probeCounts[closestCluster]++;
+        }
+        double otherError = 0.0;
+        int nonEmptyClusterCount = 0;
+        for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+            if ( probeCounts[cluster] > 0 ) {
+                otherError += distanceSums[cluster] / probeCounts[cluster];
+                nonEmptyClusterCount++;
+            }
+        }
+        return otherError / nonEmptyClusterCount;
+    }
+
+    private void calculateCentroidDistances() {
+        Arrays.fill( halfDistancesToClosestCentroid, Double.POSITIVE_INFINITY );
+        for ( int firstCluster = 0; firstCluster < clusterCount; firstCluster++ ) {
+            for ( int secondCluster = firstCluster + 1; secondCluster < clusterCount; secondCluster++ ) {
+                double squaredDistance = 0.0;
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    double difference = centroids[firstCluster * dimension + attributeIndex] - centroids[secondCluster * dimension + attributeIndex];
+                    squaredDistance += difference * difference;
+                }
+                double distance = Math.sqrt( squaredDistance );
+                centroidDistances[firstCluster * clusterCount + secondCluster] = distance;
+                centroidDistances[secondCluster * clusterCount + firstCluster] = distance;
+                halfDistancesToClosestCentroid[firstCluster] = Math.min( halfDistancesToClosestCentroid[firstCluster], 0.5 * distance );
+                halfDistancesToClosestCentroid[secondCluster] = Math.min( halfDistancesToClosestCentroid[secondCluster], 0.5 * distance );
+            }
+        }
+    }
+
+    /**
+     * Ends a run: the distance of every probe to its centroid is computed exactly before a pruned reassignment, which
+     * keeps the upper bounds exact, so they are the distances the error is summed from.
+     */
+    private void assignProbesToFinalCentroids( boolean elkan ) {
+        calculateCentroidDistances();
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            upperBounds[probe] = distance( probe, assignment[probe] );
+            if ( elkan ) {
+                lowerBounds[probe * clusterCount + assignment[probe]] = upperBounds[probe];
+            }
+        }
+        if ( elkan ) {
+            reassignProbesElkan( true );
+        } else {
+            reassignProbesHamerly( true );
+        }
+        measureError();
+    }
+
+    /**
+     * Error of the current assignment, whose upper bounds must be the exact distances.
+     */
+    private void measureError() {
+        Arrays.fill( distanceSumsPerCluster, 0.0 );
+        Arrays.fill( countOfProbesPerCluster, 0 );
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            distanceSumsPerCluster[assignment[probe]] += upperBounds[probe];
+            countOfProbesPerCluster[assignment[probe]]++;
+        }
+        error = 0.0;
+        for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+            if ( countOfProbesPerCluster[cluster] == 0 ) {
+                throw new EmptyClusterException();
+            }
+            error += distanceSumsPerCluster[cluster] / countOfProbesPerCluster[cluster];
+        }
+        error /= clusterCount;
+    }
+
+    /**
+     * @param upperBoundsTight whether the upper bounds are already the exact distances to the assigned centroids
+     */
+    private void reassignProbesHamerly( boolean upperBoundsTight ) {
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            double bound = Math.max( halfDistancesToClosestCentroid[assignment[probe]], lowerBounds[probe] );
+            if ( upperBounds[probe] <= bound ) {
+                continue;
+            }
+            if ( !upperBoundsTight ) {
+                upperBounds[probe] = distance( probe, assignment[probe] );
+            }
+            if ( upperBounds[probe] <= bound ) {
+                continue;
+            }
+            double smallestDistance = Double.POSITIVE_INFINITY;
+            double secondSmallestDistance = Double.POSITIVE_INFINITY;
+            int closestCluster = 0;
+            for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                double distance = cluster == assignment[probe] ? upperBounds[probe] : distance( probe, cluster );
+                if ( distance < smallestDistance ) {
+                    secondSmallestDistance = smallestDistance;
+                    smallestDistance = distance;
+                    closestCluster = cluster;
+                } else if ( distance < secondSmallestDistance ) {
+                    secondSmallestDistance = distance;
+                }
+            }
+            assignment[probe] = closestCluster;
+            upperBounds[probe] = smallestDistance;
+            lowerBounds[probe] = secondSmallestDistance;
+        }
+    }
+
+    private void reassignProbesElkan( boolean upperBoundsTight ) {
+        for ( int probe = 0; probe < probeCount; probe++ ) {
+            int assignedCluster = assignment[probe];
+            if ( upperBounds[probe] <= halfDistancesToClosestCentroid[assignedCluster] ) {
+                continue;
+            }
+            int boundsOffset = probe * clusterCount;
+            boolean upperBoundTight = upperBoundsTight;
+            for ( int cluster = 0; cluster < clusterCount; cluster++ ) {
+                if ( cluster == assignedCluster
+                     || upperBounds[probe] <= lowerBounds[boundsOffset + cluster]
+                     || upperBounds[probe] <= 0.5 * centroidDistances[assignedCluster * clusterCount + cluster] ) {
+                    continue;
+                }
+                if ( !upperBoundTight ) {
+                    upperBounds[probe] = distance( probe, assignedCluster );
+                    lowerBounds[boundsOffset + assignedCluster] = upperBounds[probe];
+                    upperBoundTight = true;
+                    if ( upperBounds[probe] <= lowerBounds[boundsOffset + cluster]
+                         || upperBounds[probe] <= 0.5 * centroidDistances[assignedCluster * clusterCount + cluster] ) {
+                        continue;
+                    }
+                }
+                double distance = distance( probe, cluster );
+                lowerBounds[boundsOffset + cluster] = distance;
+                if ( distance < upperBounds[probe] ) {
+                    assignedCluster = cluster;
+                    upperBounds[probe] = distance;
+                }
+            }
+            assignment[probe] = assignedCluster;
+        }
+    }
+
+    private double distance( int probe, int cluster ) {
+        computedDistanceCount++;
+        return Math.sqrt( squaredDistance( probe, cluster ) );
+    }
+
+    private double squaredDistance( int probe, int cluster ) {
+        int centroidOffset = cluster * dimension;
+        if ( sparseProbes != null ) {
+            return sparseProbes.squaredDistanceTo( probe, centroids, centroidOffset, centroidSquaredNorms[cluster] );
+        }
+        int probeOffset = probe * dimension;
+        double squaredDistance = 0.0;
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            double difference = probes[probeOffset + attributeIndex] - centroids[centroidOffset + attributeIndex];
+            squaredDistance += difference * difference;
+        }
+        return squaredDistance;
+    }
+
+    private double calculateSquaredNorm( int cluster ) {
+        double squaredNorm = 0.0;
+        for ( int attributeIndex = cluster * dimension; attributeIndex < ( cluster + 1 ) * dimension; attributeIndex++ ) {
+            squaredNorm += centroids[attributeIndex] * centroids[attributeIndex];
+        }
+        return squaredNorm;
+    }
+
+}
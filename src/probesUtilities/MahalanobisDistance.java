@@ -0,0 +1,245 @@
+package probesUtilities;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import java.util.Arrays;
+
+/**
+ * Squared Mahalanobis distance (x - m)^T C^-1 (x - m) to one mean under one covariance matrix C, factored once.
+ * <p>
+ * A positive definite C is factored by Cholesky, C = L L^T, and a distance is one forward substitution L y = x - m
+ * followed by |y|^2. When C is not positive definite (singular, or indefinite through rounding) its eigenvalues
+ * below d * largest eigenvalue * machine epsilon are dropped and the distance uses the factor W = diag(1 / sqrt(l)) V^T
+ * of the pseudoinverse C^+ = W^T W instead, |W (x - m)|^2. A covariance with non-finite entries gives NaN distances.
+ * <p>
+ * Distances are computed into a buffer allocated once, so an instance must not be shared between threads.
+ */
+public class MahalanobisDistance {
+
+    private static final double MACHEPS = Math.ulp( 1.0 );
+
+    private final int dimension;
+    private final double[] mean;
+    /**
+     * Cholesky factor L row by row (entry (i, j), j <= i, at i * dimension + j), or null when the pseudoinverse factor
+     * is used.
+     */
+    private final double[] choleskyFactor;
+    /**
+     * Rows of the pseudoinverse factor W, row r at r * dimension; rank rows.
+     */
+    private final double[] pseudoinverseFactor;
+    private final int rank;
+    private final double logDeterminant;
+    private final boolean finite;
+    private final double[] buffer;
+
+    /**
+     * @param covariance symmetric d x d covariance matrix, not modified
+     */
+    public MahalanobisDistance( double[] mean, double[][] covariance ) {
+        dimension = mean.length;
+        this.mean = mean.clone();
+        buffer = new double[dimension];
+        finite = isFinite( covariance );
+        double[] factor = finite ? factorCholesky( covariance ) : null;
+        if ( factor != null || !finite ) {
+            choleskyFactor = factor;
+            pseudoinverseFactor = null;
+            rank = dimension;
+            double logDeterminantOfFactor = finite ? 0.0 : Double.NaN;
+            for ( int row = 0; row < dimension && finite; row++ ) {
+                logDeterminantOfFactor += Math.log( factor[row * dimension + row] );
+            }
+            logDeterminant = 2.0 * logDeterminantOfFactor;
+            return;
+        }
+        choleskyFactor = null;
+        EigenvalueDecomposition eigenvalueDecomposition = new Matrix( covariance ).eig();
+        double[] eigenvalues = eigenvalueDecomposition.getRealEigenvalues();
+        double[][] eigenvectors = eigenvalueDecomposition.getV().getArray();
+        double largestEigenvalue = 0.0;
+        for ( double eigenvalue : eigenvalues ) {
+            largestEigenvalue = Math.max( largestEigenvalue, eigenvalue );
+        }
+        double tolerance = dimension * largestEigenvalue * MACHEPS;
+        int keptEigenvalues = 0;
+        for ( double eigenvalue : eigenvalues ) {
+            if ( eigenvalue > tolerance ) {
+                keptEigenvalues++;
+            }
+        }
+        rank = keptEigenvalues;
+        pseudoinverseFactor = new double[rank * dimension];
+        double logPseudoDeterminant = 0.0;
+        int row = 0;
+        for ( int eigenvalueIndex = 0; eigenvalueIndex < eigenvalues.length; eigenvalueIndex++ ) {
+            if ( eigenvalues[eigenvalueIndex] > tolerance ) {
+                logPseudoDeterminant += Math.log( eigenvalues[eigenvalueIndex] );
+                double scale = 1.0 / Math.sqrt( eigenvalues[eigenvalueIndex] );
+                for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+                    pseudoinverseFactor[row * dimension + attributeIndex] = eigenvectors[attributeIndex][eigenvalueIndex] * scale;
+                }
+                row++;
+            }
+        }
+        logDeterminant = logPseudoDeterminant;
+    }
+
+    /**
+     * Whether the covariance was positive definite and is used through its Cholesky factor.
+     */
+    public boolean isCholeskyFactored() {
+        return choleskyFactor != null;
+    }
+
+    /**
+     * Rank of the inverse covariance used - the dimension when Cholesky factored, the number of kept eigenvalues
+     * otherwise.
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * log det C, or the log of the product of the kept eigenvalues (pseudo-determinant) when C is not positive
+     * definite; NaN for a non-finite covariance.
+     */
+    public double getLogDeterminant() {
+        return logDeterminant;
+    }
+
+    /**
+     * False when the covariance had non-finite entries and every distance is NaN.
+     */
+    public boolean isFinite() {
+        return finite;
+    }
+
+    public double[] getMean() {
+        return mean;
+    }
+
+    public double squaredDistance( double[] probe ) {
+        if ( !finite ) {
+            return Double.NaN;
+        }
+        for ( int attributeIndex = 0; attributeIndex < dimension; attributeIndex++ ) {
+            buffer[attributeIndex] = probe[attributeIndex] - mean[attributeIndex];
+        }
+        double distance = 0.0;
+        if ( choleskyFactor != null ) {
+            // forward substitution in place: buffer[i] only depends on the already solved buffer[0 .. i)
+            for ( int row = 0; row < dimension; row++ ) {
+                int rowOffset = row * dimension;
+                double value = buffer[row];
+                for ( int column = 0; column < row; column++ ) {
+                    value -= choleskyFactor[rowOffset + column] * buffer[column];
+                }
+                value /= choleskyFactor[rowOffset + row];
+                buffer[row] = value;
+                distance += value * value;
+            }
+            return distance;
+        }
+        for ( int row = 0; row < rank; row++ ) {
+            int rowOffset = row * dimension;
+            double value = 0.0;
+            for ( int column = 0; column < dimension; column++ ) {
+                value += pseudoinverseFactor[rowOffset + column] * buffer[column];
+            }
+            distance += value * value;
+        }
+        return distance;
+    }
+
+    /**
+     * Whitening factor W with squared distance |W (x - m)|^2: rows of L^-1 (lower triangular) when Cholesky factored,
+     * the rank rows of the pseudoinverse factor otherwise; rows of NaN for a non-finite covariance.
+     */
+    public double[][] getWhiteningFactor() {
+        if ( !finite ) {
+            double[][] whiteningFactor = new double[dimension][dimension];
+            for ( double[] row : whiteningFactor ) {
+                Arrays.fill( row, Double.NaN );
+            }
+            return whiteningFactor;
+        }
+        if ( choleskyFactor != null ) {
+            // column j of L^-1 solves L x = e_j
+            double[][] inverseFactor = new double[dimension][dimension];
+            for ( int column = 0; column < dimension; column++ ) {
+                for ( int row = column; row < dimension; row++ ) {
+                    double value = row == column ? 1.0 : 0.0;
+                    for ( int inner = column; inner < row; inner++ ) {
+                        value -= choleskyFactor[row * dimension + inner] * inverseFactor[inner][column];
+                    }
+                    inverseFactor[row][column] = value / choleskyFactor[row * dimension + row];
+                }
+            }
+            return inverseFactor;
+        }
+        double[][] whiteningFactor = new double[rank][];
+        for ( int row = 0; row < rank; row++ ) {
+            whiteningFactor[row] = Arrays.copyOfRange( pseudoinverseFactor, row * dimension, ( row + 1 ) * dimension );
+        }
+        return whiteningFactor;
+    }
+
+    /**
+     * The inverse covariance C^-1 (or C^+) as an explicit matrix W^T W, for kernels that need its entries.
+     */
+    public double[][] getInverseCovariance() {
+        double[][] whiteningFactor = getWhiteningFactor();
+        double[][] inverse = new double[dimension][dimension];
+        for ( int first = 0; first < dimension; first++ ) {
+            for ( int second = 0; second <= first; second++ ) {
+                double value = 0.0;
+                // below the diagonal only, as L^-1 is lower triangular; the whole column for the other factors
+                for ( int inner = choleskyFactor != null ? first : 0; inner < whiteningFactor.length; inner++ ) {
+                    value += whiteningFactor[inner][first] * whiteningFactor[inner][second];
+                }
+                inverse[first][second] = value;
+                inverse[second][first] = value;
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * Cholesky-Banachiewicz; null when a pivot is not positive.
+     */
+    private static double[] factorCholesky( double[][] covariance ) {
+        int dimension = covariance.length;
+        double[] factor = new double[dimension * dimension];
+        for ( int row = 0; row < dimension; row++ ) {
+            for ( int column = 0; column <= row; column++ ) {
+                double sum = covariance[row][column];
+                for ( int inner = 0; inner < column; inner++ ) {
+                    sum -= factor[row * dimension + inner] * factor[column * dimension + inner];
+                }
+                if ( row == column ) {
+                    if ( !( sum > 0.0 ) ) {
+                        return null;
+                    }
+                    factor[row * dimension + row] = Math.sqrt( sum );
+                } else {
+                    factor[row * dimension + column] = sum / factor[column * dimension + column];
+                }
+            }
+        }
+        return factor;
+    }
+
+    private static boolean isFinite( double[][] matrix ) {
+        for ( double[] row : matrix ) {
+            for ( double value : row ) {
+                if ( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
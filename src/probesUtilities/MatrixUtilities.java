@@ -57,4 +57,11 @@ public class MatrixUtilities {
         return new Matrix( inverse );
     }
 
+    /**
+     * Rounds to two decimal places for printing rates, timings and ratios.
+     */
+    public static double round( double value ) {
+        return Math.round( value * 100.0 ) / 100.0;
+    }
+
 }
@@ -0,0 +1,72 @@
+package probesUtilities;
+
+import Jama.Matrix;
+
+public class PCAFeatureExtractor {
+
+    /**
+     * Projects probes (rows - features, columns - samples) onto the dominant eigenvectors carrying the requested share
+     * of scatter energy. The passed matrix is left untouched.
+     */
+    public double[][] extractFeaturesUsingPCA( double[][] probes, double energy ) {
+        double[][] FFNorm = centerAroundMean( probes );
+        Matrix Cov = computeCovarianceMatrix( FFNorm );
+        Matrix TransformMat = extractFeatures( Cov, energy, 0 );
+        return projectSamples( new Matrix( FFNorm ), TransformMat );
+    }
+
+    private Matrix extractFeatures( Matrix C, double Ek, int k ) {
+
+        Matrix evecs, evals;
+        // compute eigenvalues and eigenvectors
+        evecs = C.eig().getV();
+        evals = C.eig().getD();
+
+        // PM: projection matrix that will hold a set dominant eigenvectors
+        Matrix PM;
+        if ( k > 0 ) {
+            // preset dimension of new feature space
+            PM = evecs.getMatrix( 0, evecs.getRowDimension() - 1,
+                                  evecs.getColumnDimension() - k, evecs.getColumnDimension() - 1 );
+        } else {
+            // dimension will be determined based on scatter energy
+            double TotEVal = evals.trace(); // total energy
+            double EAccum = 0;
+            int m = evals.getColumnDimension() - 1;
+            while ( EAccum < Ek * TotEVal ) {
+                EAccum += evals.get( m, m );
+                m--;
+            }
+            PM = evecs.getMatrix( 0, evecs.getRowDimension() - 1, m + 1, evecs.getColumnDimension() - 1 );
+        }
+        return PM;
+    }
+
+    private Matrix computeCovarianceMatrix( double[][] m ) {
+        Matrix M = new Matrix( m );
+        Matrix MT = M.transpose();
+        Matrix C = M.times( MT );
+        return C;
+    }
+
+    private double[][] centerAroundMean( double[][] probes ) {
+        double[][] M = new double[probes.length][];
+        double[] mean = new double[probes.length];
+        for ( int i = 0; i < probes.length; i++ ) {
+            M[i] = probes[i].clone();
+            for ( int j = 0; j < M[i].length; j++ ) {
+                mean[i] += M[i][j];
+            }
+            mean[i] /= M[i].length;
+            for ( int j = 0; j < M[i].length; j++ ) {
+                M[i][j] -= mean[i];
+            }
+        }
+        return M;
+    }
+
+    private double[][] projectSamples( Matrix FOld, Matrix TransformMat ) {
+        return ( FOld.transpose().times( TransformMat ) ).transpose().getArrayCopy();
+    }
+
+}
@@ -1,172 +1,169 @@
 package probesUtilities;
 
-import Jama.Matrix;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class ProbesPerTrainingAndTestSetSplitter {
 
-    private static final int MAXIMUM_BOOTSTRAP_TRIALS = 20;
-    private static final String _TRAINING = "_training";
-    private static final String _TEST = "_test";
-
-    public static List<Map<String, double[][]>> simpleValidationProbeSplitter( Map<String, double[][]> probesGroupedByClass, double percentageDistribution ) {
-        Map<String, double[][]> mapWithSplittedProbes = new HashMap<>();
-        Random random = new Random( LocalDateTime.now().getNano() );
+    public static FoldSource simpleValidationProbeSplitter( DataSet dataSet, double percentageDistribution, long seed ) {
+        return new FoldSource( 1, foldIndex -> createSimpleValidationFold( dataSet, percentageDistribution, new Random( seed ) ) );
+    }
 
-        probesGroupedByClass.entrySet().forEach( entry -> {
-            String testSetName = entry.getKey() + _TEST;
-            String trainingSetName = entry.getKey() + _TRAINING;
-            int countOfProbesForTestSet = (int) Math.round( entry.getValue()[0].length * ( 1 - percentageDistribution ) );
-            int countOfAttributes = entry.getValue().length;
-            Set<Integer> indexesOfTestProbes = new HashSet<>();
-            while ( indexesOfTestProbes.size() < countOfProbesForTestSet ) {
-                indexesOfTestProbes.add( random.nextInt( entry.getValue()[0].length ) );
+    private static FoldView createSimpleValidationFold( DataSet dataSet, double percentageDistribution, Random random ) {
+        int[][] probeIndexesPerClass = getProbeIndexesPerClass( dataSet );
+        int countOfTestProbes = 0;
+        for ( int[] probeIndexesInClass : probeIndexesPerClass ) {
+            countOfTestProbes += (int) Math.round( probeIndexesInClass.length * ( 1 - percentageDistribution ) );
+        }
+        int[] trainingIndexes = new int[dataSet.getSampleCount() - countOfTestProbes];
+        int[] testIndexes = new int[countOfTestProbes];
+        int trainingSetIndex = 0;
+        int testSetIndex = 0;
+
+        for ( int[] probeIndexesInClass : probeIndexesPerClass ) {
+            int countOfProbesForTestSet = (int) Math.round( probeIndexesInClass.length * ( 1 - percentageDistribution ) );
+            // partial Fisher-Yates shuffle - the first countOfProbesForTestSet indexes become the test probes
+            for ( int index = 0; index < countOfProbesForTestSet; index++ ) {
+                swap( probeIndexesInClass, index, index + random.nextInt( probeIndexesInClass.length - index ) );
+            }
+            for ( int index = 0; index < probeIndexesInClass.length; index++ ) {
+                if ( index < countOfProbesForTestSet ) {
+                    testIndexes[testSetIndex++] = probeIndexesInClass[index];
+                } else {
+                    trainingIndexes[trainingSetIndex++] = probeIndexesInClass[index];
+                }
             }
+        }
+        return new FoldView( dataSet, trainingIndexes, testIndexes );
+    }
 
-            double[][] testSet = new double[countOfAttributes][countOfProbesForTestSet];
-            double[][] trainingSet = new double[countOfAttributes][entry.getValue()[0].length - countOfProbesForTestSet];
+    /**
+     * Stratified k-fold split for any number of classes. Probes are shuffled within their class and dealt to folds
+     * round-robin in a single pass over a label array, so every fold keeps the class proportions of the whole dataset.
+     * Every class must have at least one probe per fold, otherwise a fold would miss the class and not keep the
+     * proportions. The same seed always gives the same folds. Only the fold-id array is kept, index arrays of a fold are
+     * built when the fold is requested.
+     */
+    public static FoldSource crossValidationProbeSplitter( DataSet dataSet, int setsCount, long seed ) {
+        int overallProbeCount = dataSet.getSampleCount();
+        if ( setsCount < 2 || setsCount > overallProbeCount ) {
+            throw new IllegalArgumentException( "Number of folds must be between 2 and " + overallProbeCount );
+        }
+        int[] countOfProbesInEachClass = new int[dataSet.getClassCount()];
+        for ( int probeIndex = 0; probeIndex < overallProbeCount; probeIndex++ ) {
+            countOfProbesInEachClass[dataSet.getClassLabel( probeIndex )]++;
+        }
+        for ( int classIndex = 0; classIndex < countOfProbesInEachClass.length; classIndex++ ) {
+            if ( countOfProbesInEachClass[classIndex] > 0 && countOfProbesInEachClass[classIndex] < setsCount ) {
+                throw new IllegalArgumentException( "Number of folds must not exceed the " + countOfProbesInEachClass[classIndex] + " probes of class " + dataSet.getClassNames()[classIndex] );
+            }
+        }
+        int[] foldIndexes = assignProbesToFolds( dataSet, setsCount, new Random( seed ) );
+        int[] countOfProbesInEachFold = new int[setsCount];
+        for ( int foldIndex : foldIndexes ) {
+            countOfProbesInEachFold[foldIndex]++;
+        }
+        return new FoldSource( setsCount, setIndex -> {
+            int[] testIndexes = new int[countOfProbesInEachFold[setIndex]];
+            int[] trainingIndexes = new int[overallProbeCount - testIndexes.length];
             int testSetIndex = 0;
             int trainingSetIndex = 0;
-
-            for ( int probeIndex = 0; probeIndex < entry.getValue()[0].length; probeIndex++ ) {
-                if ( indexesOfTestProbes.contains( probeIndex ) ) {
-                    for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
-                        testSet[attributeIndex][testSetIndex] = entry.getValue()[attributeIndex][probeIndex];
-                    }
-                    testSetIndex++;
+            for ( int probeIndex = 0; probeIndex < overallProbeCount; probeIndex++ ) {
+                if ( foldIndexes[probeIndex] == setIndex ) {
+                    testIndexes[testSetIndex++] = probeIndex;
                 } else {
-                    for ( int attributeIndex = 0; attributeIndex < countOfAttributes; attributeIndex++ ) {
-                        trainingSet[attributeIndex][trainingSetIndex] = entry.getValue()[attributeIndex][probeIndex];
-                    }
-                    trainingSetIndex++;
+                    trainingIndexes[trainingSetIndex++] = probeIndex;
                 }
             }
-            mapWithSplittedProbes.put( testSetName, testSet );
-            mapWithSplittedProbes.put( trainingSetName, trainingSet );
+            return new FoldView( dataSet, trainingIndexes, testIndexes );
         } );
-        List<Map<String, double[][]>> result = new ArrayList<>();
-        result.add( mapWithSplittedProbes );
-        return result;
     }
 
-    public static List<Map<String, double[][]>> crossValidationProbeSplitter( double[][] probes, int setsCount, String[] classNames, int[] countOfSamplesPerClass ) {
-        int countOfProbesPerEachSection = probes[0].length / setsCount;
-        int overallProbeCount = probes[0].length;
-        List<Map<String, double[][]>> setsOfProbes = new ArrayList<>();
-
-        List<Integer> probeIndexes = IntStream.rangeClosed( 0, overallProbeCount - 1 ).boxed().collect( Collectors.toList() );
-        Collections.shuffle( probeIndexes );
-
-        for ( int setIndex = 0; setIndex < setsCount; setIndex++ ) {
-            Map<String, double[][]> splitedProbes = new HashMap<>();
-            Map<String, Integer> addedProbesToEachSet = new HashMap<>();
-
-            List<Integer> testProbesIndexes = probeIndexes.stream()
-                    .skip( setIndex * countOfProbesPerEachSection )
-                    .limit( countOfProbesPerEachSection )
-                    .collect( Collectors.toList() );
-            int[] countOfTestProbesInEachClass = getCountOfProbesInSetForClasses( testProbesIndexes, countOfSamplesPerClass );
-
-            for ( int index = 0; index < classNames.length; index++ ) {
-                String className = classNames[index];
-                splitedProbes.put( className + _TRAINING, new double[overallProbeCount - countOfTestProbesInEachClass[index]][probes.length] );
-                splitedProbes.put( className + _TEST, new double[countOfTestProbesInEachClass[index]][probes.length] );
-                addedProbesToEachSet.put( className + _TRAINING, 0 );
-                addedProbesToEachSet.put( className + _TEST, 0 );
+    private static int[] assignProbesToFolds( DataSet dataSet, int setsCount, Random random ) {
+        int[][] probeIndexesPerClass = getProbeIndexesPerClass( dataSet );
+        int[] foldIndexes = new int[dataSet.getSampleCount()];
+        int nextFold = 0;
+        for ( int[] probeIndexesInClass : probeIndexesPerClass ) {
+            for ( int index = probeIndexesInClass.length - 1; index > 0; index-- ) {
+                swap( probeIndexesInClass, index, random.nextInt( index + 1 ) );
+            }
+            for ( int probeIndex : probeIndexesInClass ) {
+                foldIndexes[probeIndex] = nextFold;
+                nextFold = nextFold + 1 == setsCount ? 0 : nextFold + 1;
             }
-            probeIndexes.stream().forEach( ( probeIndex ) -> {
-                String className;
-                int classIndex = getClassIndex( probeIndex, countOfSamplesPerClass );
-                if ( testProbesIndexes.contains( probeIndex ) ) {
-                    className = classNames[classIndex] + _TEST;
-                } else {
-                    className = classNames[classIndex] + _TRAINING;
-                }
-                double[] probe = MatrixUtilities.getProbe( probes, probeIndex );
-                int probeIndexInSplittedArray = addedProbesToEachSet.get( className );
-                splitedProbes.get( className )[probeIndexInSplittedArray] = probe;
-                probeIndexInSplittedArray++;
-                addedProbesToEachSet.put( className, probeIndexInSplittedArray );
-            } );
-
-            splitedProbes.keySet().stream().forEach( ( key ) -> {
-                double[][] transponsedMatrix = new Matrix( splitedProbes.get( key ) ).transpose().getArray();
-                splitedProbes.put( key, transponsedMatrix );
-            } );
-            setsOfProbes.add( splitedProbes );
         }
-
-        return setsOfProbes;
+        return foldIndexes;
     }
 
-    public static List<Map<String, double[][]>> bootstrapValidationProbeSplitter( double[][] probes, int setsCount, String[] classNames, int[] countOfSamplesPerClass ) {
-        int overallProbeCount = probes[0].length;
-        List<Map<String, double[][]>> setsOfProbes = new ArrayList<>();
-        Random random = new Random( LocalDateTime.now().getNano() );
-        for ( int bootstrapTrialIndex = 0; bootstrapTrialIndex < MAXIMUM_BOOTSTRAP_TRIALS; bootstrapTrialIndex++ ) {
-            Map<String, double[][]> splitedProbes = new HashMap<>();
-            Map<String, Integer> addedProbesToEachSet = new HashMap<>();
-
-            List<Integer> trainingProbeIndexes = new ArrayList<>( overallProbeCount );
-            List<Integer> testProbeIndexes = new ArrayList<>();
+    /**
+     * Bootstrap trials stored as multiplicity counts over the original probes: every drawn probe appears once in the
+     * training indexes with its draw count as weight, and the out-of-bag probes form the test set. A trial therefore
+     * costs O(n) ints whatever the number of duplicates. Trial t draws from its own generator, seeded with the t-th
+     * value of a SplittableRandom seeded with seed, so a trial can be drawn lazily and independently of the others, and
+     * runs with neighbouring seeds share no trials. A draw that leaves no probe out of bag has nothing to test on and
+     * is replaced by the next draw of the same generator.
+     */
+    public static FoldSource bootstrapValidationProbeSplitter( DataSet dataSet, int setsCount, long seed ) {
+        if ( setsCount < 1 ) {
+            throw new IllegalArgumentException( "Number of bootstrap trials must be at least 1" );
+        }
+        if ( dataSet.getSampleCount() < 2 ) {
+            throw new IllegalArgumentException( "Bootstrap needs at least 2 probes to leave any out of bag" );
+        }
+        long[] trialSeeds = new SplittableRandom( seed ).longs( setsCount ).toArray();
+        return new FoldSource( setsCount, bootstrapTrialIndex -> createBootstrapTrial( dataSet, new SplittableRandom( trialSeeds[bootstrapTrialIndex] ) ) );
+    }
 
-            for ( int probeIndex = 0; probeIndex < overallProbeCount; probeIndex++ ) {
-                int randomProbeIndex = random.nextInt( overallProbeCount );
-                trainingProbeIndexes.add( randomProbeIndex );
-            }
-            for ( int testProbeIndex = 0; testProbeIndex < overallProbeCount; testProbeIndex++ ) {
-                if ( !trainingProbeIndexes.contains( testProbeIndex ) ) {
-                    testProbeIndexes.add( testProbeIndex );
+    private static FoldView createBootstrapTrial( DataSet dataSet, SplittableRandom random ) {
+        int overallProbeCount = dataSet.getSampleCount();
+        int[] multiplicities = new int[overallProbeCount];
+        int countOfDrawnProbes;
+        do {
+            Arrays.fill( multiplicities, 0 );
+            countOfDrawnProbes = 0;
+            for ( int draw = 0; draw < overallProbeCount; draw++ ) {
+                if ( multiplicities[random.nextInt( overallProbeCount )]++ == 0 ) {
+                    countOfDrawnProbes++;
                 }
             }
-
-            int[] countOfTrainingProbesInEachClass = getCountOfProbesInSetForClasses( trainingProbeIndexes, countOfSamplesPerClass );
-            int[] countOfTestProbesInEachClass = getCountOfProbesInSetForClasses( testProbeIndexes, countOfSamplesPerClass );
-            for ( int index = 0; index < classNames.length; index++ ) {
-                String className = classNames[index];
-                splitedProbes.put( className + _TRAINING, new double[countOfTrainingProbesInEachClass[index]][probes.length] );
-                splitedProbes.put( className + _TEST, new double[countOfTestProbesInEachClass[index]][probes.length] );
-                addedProbesToEachSet.put( className + _TRAINING, 0 );
-                addedProbesToEachSet.put( className + _TEST, 0 );
+        } while ( countOfDrawnProbes == overallProbeCount );
+        BitSet outOfBagProbes = new BitSet( overallProbeCount );
+        int[] trainingIndexes = new int[countOfDrawnProbes];
+        int[] trainingWeights = new int[countOfDrawnProbes];
+        int trainingSetIndex = 0;
+        for ( int probeIndex = 0; probeIndex < overallProbeCount; probeIndex++ ) {
+            if ( multiplicities[probeIndex] == 0 ) {
+                outOfBagProbes.set( probeIndex );
+            } else {
+                trainingIndexes[trainingSetIndex] = probeIndex;
+                trainingWeights[trainingSetIndex] = multiplicities[probeIndex];
+                trainingSetIndex++;
             }
-            trainingProbeIndexes.stream().forEach( ( probeIndex ) -> {
-                double[] probe = MatrixUtilities.getProbe( probes, probeIndex );
-                int classIndex = getClassIndex( probeIndex, countOfSamplesPerClass );
-                String className = classNames[classIndex] + _TRAINING;
-                int probeIndexInSplittedArray = addedProbesToEachSet.get( className );
-                splitedProbes.get( className )[probeIndexInSplittedArray] = probe;
-                probeIndexInSplittedArray++;
-                addedProbesToEachSet.put( className, probeIndexInSplittedArray );
-            } );
-            testProbeIndexes.stream().forEach( ( probeIndex ) -> {
-                double[] probe = MatrixUtilities.getProbe( probes, probeIndex );
-                int classIndex = getClassIndex( probeIndex, countOfSamplesPerClass );
-                String className = classNames[classIndex] + _TEST;
-                int probeIndexInSplittedArray = addedProbesToEachSet.get( className );
-                splitedProbes.get( className )[probeIndexInSplittedArray] = probe;
-                probeIndexInSplittedArray++;
-                addedProbesToEachSet.put( className, probeIndexInSplittedArray );
-            } );
-            
-            splitedProbes.keySet().stream().forEach( ( key ) -> {
-                double[][] transponsedMatrix = new Matrix( splitedProbes.get( key ) ).transpose().getArray();
-                splitedProbes.put( key, transponsedMatrix );
-            } );
-            setsOfProbes.add( splitedProbes );
-
         }
-        return setsOfProbes;
+        int[] testIndexes = outOfBagProbes.stream().toArray();
+        return new FoldView( dataSet, trainingIndexes, trainingWeights, testIndexes );
     }
 
-    private static int getClassIndex( Integer probeIndex, int[] countOfSamplesPerClass ) {
-        if ( probeIndex < countOfSamplesPerClass[0] ) {
-            return 0;
-        } else {
-            return 1;
+    private static int[][] getProbeIndexesPerClass( DataSet dataSet ) {
+        int[] countOfProbesInEachClass = new int[dataSet.getClassCount()];
+        for ( int probeIndex = 0; probeIndex < dataSet.getSampleCount(); probeIndex++ ) {
+            countOfProbesInEachClass[dataSet.getClassLabel( probeIndex )]++;
+        }
+        int[][] probeIndexesPerClass = new int[countOfProbesInEachClass.length][];
+        for ( int classIndex = 0; classIndex < countOfProbesInEachClass.length; classIndex++ ) {
+            probeIndexesPerClass[classIndex] = new int[countOfProbesInEachClass[classIndex]];
+            countOfProbesInEachClass[classIndex] = 0;
         }
+        for ( int probeIndex = 0; probeIndex < dataSet.getSampleCount(); probeIndex++ ) {
+            int classIndex = dataSet.getClassLabel( probeIndex );
+            probeIndexesPerClass[classIndex][countOfProbesInEachClass[classIndex]++] = probeIndex;
+        }
+        return probeIndexesPerClass;
+    }
+
+    private static void swap( int[] array, int first, int second ) {
+        int tmp = array[first];
+        array[first] = array[second];
+        array[second] = tmp;
     }
 
     private static void printInt( List<Integer> ints ) {
@@ -192,15 +189,4 @@ public class ProbesPerTrainingAndTestSetSplitter {
         }
         System.out.println( sb.toString() );
     }
-
-    private static int[] getCountOfProbesInSetForClasses( List<Integer> probesIndexes, int[] countOfSamplesPerClass ) {
-        int[] countOfTestProbesInEachClass = new int[countOfSamplesPerClass.length];
-        int classIndex;
-        for ( Integer probesIndex : probesIndexes ) {
-            classIndex = getClassIndex( probesIndex, countOfSamplesPerClass );
-            countOfTestProbesInEachClass[classIndex]++;
-        }
-
-        return countOfTestProbesInEachClass;
-    }
 }
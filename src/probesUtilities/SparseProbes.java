@@ -0,0 +1,206 @@
+package probesUtilities;
+
+/**
+ * Probes in compressed sparse row (CSR) form: the non-zero values of row r are values[rowStart[r] .. rowStart[r + 1])
+ * in ascending column order, with their columns in the parallel columns array. Columns are positions in the attribute
+ * selection the probes were built over, not dataset attribute indexes. The squared norm of every row is kept for the
+ * kernels against dense vectors.
+ * <p>
+ * Classifiers build it only through the createIfSparse factories, which return null when the probes have more than
+ * MAXIMUM_DENSITY non-zeros - above that, skipping zeros saves less than the indirect access costs and the dense
+ * kernels stay in use.
+ */
+public class SparseProbes {
+
+    public static final double MAXIMUM_DENSITY = 0.3;
+
+    private final int columnCount;
+    private final int[] rowStart;
+    private final int[] columns;
+    private final double[] values;
+    private final double[] squaredNorms;
+
+    private SparseProbes( int columnCount, int[] rowStart, int[] columns, double[] values ) {
+        this.columnCount = columnCount;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+        squaredNorms = new double[rowStart.length - 1];
+        for ( int row = 0; row < squaredNorms.length; row++ ) {
+            for ( int entry = rowStart[row]; entry < rowStart[row + 1]; entry++ ) {
+                squaredNorms[row] += values[entry] * values[entry];
+            }
+        }
+    }
+
+    /**
+     * One row per probe of the dataset (row = probe index) over the selected attributes; null when not sparse enough.
+     */
+    public static SparseProbes createIfSparse( DataSet dataSet, int[] attributes ) {
+        double[] dataSetValues = dataSet.getValues();
+        int featureCount = dataSet.getFeatureCount();
+        int rowCount = dataSet.getSampleCount();
+        long nonZeroCount = 0;
+        for ( int probeIndex = 0; probeIndex < rowCount; probeIndex++ ) {
+            for ( int attributeIndex : attributes ) {
+                if ( dataSetValues[probeIndex * featureCount + attributeIndex] != 0.0 ) {
+                    nonZeroCount++;
+                }
+            }
+        }
+        if ( !isSparseEnough( nonZeroCount, (long) rowCount * attributes.length ) ) {
+            return null;
+        }
+        int[] rowStart = new int[rowCount + 1];
+        int[] columns = new int[(int) nonZeroCount];
+        double[] values = new double[(int) nonZeroCount];
+        int entry = 0;
+        for ( int probeIndex = 0; probeIndex < rowCount; probeIndex++ ) {
+            for ( int column = 0; column < attributes.length; column++ ) {
+                double value = dataSetValues[probeIndex * featureCount + attributes[column]];
+                if ( value != 0.0 ) {
+                    columns[entry] = column;
+                    values[entry++] = value;
+                }
+            }
+            rowStart[probeIndex + 1] = entry;
+        }
+        return new SparseProbes( attributes.length, rowStart, columns, values );
+    }
+
+    /**
+     * One row per probe of row-packed probes (probe i at i * dimension); null when not sparse enough.
+     */
+    public static SparseProbes createIfSparse( double[] probes, int dimension ) {
+        int rowCount = dimension == 0 ? 0 : probes.length / dimension;
+        long nonZeroCount = 0;
+        for ( double value : probes ) {
+            if ( value != 0.0 ) {
+                nonZeroCount++;
+            }
+        }
+        if ( !isSparseEnough( nonZeroCount, probes.length ) ) {
+            return null;
+        }
+        int[] rowStart = new int[rowCount + 1];
+        int[] columns = new int[(int) nonZeroCount];
+        double[] values = new double[(int) nonZeroCount];
+        int entry = 0;
+        for ( int probeIndex = 0; probeIndex < rowCount; probeIndex++ ) {
+            for ( int column = 0; column < dimension; column++ ) {
+                if ( probes[probeIndex * dimension + column] != 0.0 ) {
+                    columns[entry] = column;
+                    values[entry++] = probes[probeIndex * dimension + column];
+                }
+            }
+            rowStart[probeIndex + 1] = entry;
+        }
+        return new SparseProbes( dimension, rowStart, columns, values );
+    }
+
+    public static boolean isSparseEnough( long nonZeroCount, long entryCount ) {
+        return entryCount > 0 && nonZeroCount <= MAXIMUM_DENSITY * entryCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public double getDensity() {
+        int rowCount = rowStart.length - 1;
+        return rowCount == 0 || columnCount == 0 ? 0.0 : (double) values.length / ( (long) rowCount * columnCount );
+    }
+
+    public double getSquaredNorm( int row ) {
+        return squaredNorms[row];
+    }
+
+    /**
+     * Squared Euclidean distance between two rows, merging their non-zeros. The terms are summed in column order and
+     * only zero terms are left out, so the result is bit-identical to the dense sum over all columns.
+     */
+    public double squaredDistance( int firstRow, int secondRow ) {
+        int firstEntry = rowStart[firstRow];
+        int firstEnd = rowStart[firstRow + 1];
+        int secondEntry = rowStart[secondRow];
+        int secondEnd = rowStart[secondRow + 1];
+        double distance = 0.0;
+        while ( firstEntry < firstEnd && secondEntry < secondEnd ) {
+            double difference;
+            if ( columns[firstEntry] == columns[secondEntry] ) {
+                difference = values[firstEntry++] - values[secondEntry++];
+            } else if ( columns[firstEntry] < columns[secondEntry] ) {
+                difference = values[firstEntry++];
+            } else {
+                difference = values[secondEntry++];
+            }
+            distance += difference * difference;
+        }
+        for ( ; firstEntry < firstEnd; firstEntry++ ) {
+            distance += values[firstEntry] * values[firstEntry];
+        }
+        for ( ; secondEntry < secondEnd; secondEntry++ ) {
+            distance += values[secondEntry] * values[secondEntry];
+        }
+        return distance;
+    }
+
+    /**
+     * Writes the non-zeros of a row into a dense vector of getColumnCount() zeros; clear puts the zeros back.
+     */
+    public void scatter( int row, double[] dense ) {
+        for ( int entry = rowStart[row]; entry < rowStart[row + 1]; entry++ ) {
+            dense[columns[entry]] = values[entry];
+        }
+    }
+
+    public void clear( int row, double[] dense ) {
+        for ( int entry = rowStart[row]; entry < rowStart[row + 1]; entry++ ) {
+            dense[columns[entry]] = 0.0;
+        }
+    }
+
+    public double dot( int row, double[] dense ) {
+        return dot( row, dense, 0 );
+    }
+
+    /**
+     * Dot product with the dense vector stored from denseOffset on.
+     */
+    public double dot( int row, double[] dense, int denseOffset ) {
+        double product = 0.0;
+        for ( int entry = rowStart[row]; entry < rowStart[row + 1]; entry++ ) {
+            product += values[entry] * dense[denseOffset + columns[entry]];
+        }
+        return product;
+    }
+
+    /**
+     * Squared Euclidean distance from a row to a dense vector as |row|^2 - 2 row . dense + |dense|^2, so only the
+     * non-zeros of the row are visited; rounding can make a tiny distance negative, so it is clamped at zero.
+     */
+    public double squaredDistanceTo( int row, double[] dense, double denseSquaredNorm ) {
+        return squaredDistanceTo( row, dense, 0, denseSquaredNorm );
+    }
+
+    public double squaredDistanceTo( int row, double[] dense, int denseOffset, double denseSquaredNorm ) {
+        return Math.max( 0.0, squaredNorms[row] - 2.0 * dot( row, dense, denseOffset ) + denseSquaredNorm );
+    }
+
+    /**
+     * row^T matrix row over the non-zero pairs of the row only.
+     */
+    public double quadraticForm( int row, double[][] matrix ) {
+        double form = 0.0;
+        for ( int firstEntry = rowStart[row]; firstEntry < rowStart[row + 1]; firstEntry++ ) {
+            double[] matrixRow = matrix[columns[firstEntry]];
+            double rowTimesMatrix = 0.0;
+            for ( int secondEntry = rowStart[row]; secondEntry < rowStart[row + 1]; secondEntry++ ) {
+                rowTimesMatrix += matrixRow[columns[secondEntry]] * values[secondEntry];
+            }
+            form += values[firstEntry] * rowTimesMatrix;
+        }
+        return form;
+    }
+
+}